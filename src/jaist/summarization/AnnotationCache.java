@@ -0,0 +1,240 @@
+package jaist.summarization;
+
+import edu.stanford.nlp.pipeline.Annotation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Annotated documents keyed by the SHA-256 of their text and of the pipeline configuration, so a document that
+ * was already summarised (an article shared by overlapping topics, a retried request) is not run through CoreNLP
+ * again. Changing the annotators or their options in config.properties gives every document a new key instead of
+ * serving annotations made by the old pipeline.
+ *
+ * Both tiers are off by default. annotationCache.size keeps that many of the most recently used annotations in
+ * memory; annotationCache.dir also writes every annotation to disk, where it survives restarts. Annotations are
+ * kept serialized and gzipped in both tiers, and every hit deserializes a private copy, so a caller may modify
+ * the annotation it gets without affecting other documents or topics.
+ */
+public class AnnotationCache {
+    private static final String SIZE_PROPERTY = "annotationCache.size";
+    private static final String DIR_PROPERTY = "annotationCache.dir";
+    private static final int DEFAULT_SIZE = 0;
+
+    private static AnnotationCache instance = null;
+
+    private int capacity;
+    private LinkedHashMap<String, byte[]> memory;
+    private File directory;
+    private String configuration;
+
+    private AtomicLong memoryHits = new AtomicLong();
+    private AtomicLong diskHits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    public AnnotationCache(int capacity, File directory){
+        this(capacity, directory, AnnotatorHub.loadProperties());
+    }
+
+    /**
+     * @param capacity number of annotations kept in memory, 0 disables the memory tier
+     * @param directory where annotations are serialized, null disables the disk tier
+     * @param props the properties the pipelines are built from, part of every key
+     */
+    public AnnotationCache(int capacity, File directory, Properties props){
+        this.capacity = Math.max(0, capacity);
+        this.memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true){
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest){
+                return size() > AnnotationCache.this.capacity;
+            }
+        };
+
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()){
+            System.out.println("Cannot create annotation cache directory " + directory + ", disk cache disabled");
+            directory = null;
+        }
+        this.directory = directory;
+        this.configuration = hash(describe(props));
+    }
+
+    public static synchronized AnnotationCache getInstance(){
+        if (instance == null){
+            Properties props = AnnotatorHub.loadProperties();
+            int capacity = Integer.parseInt(props.getProperty(SIZE_PROPERTY, String.valueOf(DEFAULT_SIZE)).trim());
+            String dir = props.getProperty(DIR_PROPERTY, "").trim();
+
+            instance = new AnnotationCache(capacity, dir.isEmpty() ? null : new File(dir), props);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns a copy of the cached annotation of the text, or annotates it with the pipeline pool and caches
+     * the result.
+     */
+    public Annotation annotate(String text){
+        if (capacity == 0 && directory == null){
+            Annotation annotation = new Annotation(text);
+            AnnotatorHub.getInstance().annotate(annotation);
+            return annotation;
+        }
+
+        String key = hash(configuration + "\n" + text);
+
+        Annotation annotation = get(key);
+        if (annotation != null){
+            return annotation;
+        }
+
+        annotation = new Annotation(text);
+        AnnotatorHub.getInstance().annotate(annotation);
+        put(key, annotation);
+
+        return annotation;
+    }
+
+    private Annotation get(String key){
+        byte[] bytes;
+        synchronized (memory){
+            bytes = memory.get(key);
+        }
+        if (bytes != null){
+            Annotation annotation = deserialize(bytes, "memory");
+            if (annotation != null){
+                memoryHits.incrementAndGet();
+                return annotation;
+            }
+        }
+
+        bytes = readFromDisk(key);
+        if (bytes != null){
+            Annotation annotation = deserialize(bytes, key + ".ser.gz");
+            if (annotation != null){
+                diskHits.incrementAndGet();
+                remember(key, bytes);
+                return annotation;
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void put(String key, Annotation annotation){
+        byte[] bytes = serialize(annotation);
+        if (bytes == null) return;
+
+        remember(key, bytes);
+        writeToDisk(key, bytes);
+    }
+
+    private void remember(String key, byte[] bytes){
+        if (capacity == 0) return;
+
+        synchronized (memory){
+            memory.put(key, bytes);
+        }
+    }
+
+    private byte[] serialize(Annotation annotation){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes))){
+            out.writeObject(annotation);
+        }catch (IOException e){
+            System.out.println("Cannot cache annotation: " + e.getMessage());
+            return null;
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private Annotation deserialize(byte[] bytes, String source){
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)))){
+            return (Annotation) in.readObject();
+        }catch (IOException | ClassNotFoundException | ClassCastException e){
+            // stale or truncated entry, e.g. written by another CoreNLP version: annotate again and overwrite
+            System.out.println("Ignoring unreadable cached annotation " + source + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] readFromDisk(String key){
+        if (directory == null) return null;
+
+        File file = new File(directory, key + ".ser.gz");
+        if (!file.isFile()) return null;
+
+        try {
+            return Files.readAllBytes(file.toPath());
+        }catch (IOException e){
+            System.out.println("Cannot read cached annotation " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, byte[] bytes){
+        if (directory == null) return;
+
+        File file = new File(directory, key + ".ser.gz");
+        try {
+            // write under a temporary name so concurrent readers never see a partial file
+            File temporary = File.createTempFile("annotation-", ".tmp", directory);
+            Files.write(temporary.toPath(), bytes);
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }catch (IOException e){
+            System.out.println("Cannot write cached annotation " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The properties in a stable order, leaving out the cache's own settings, which do not affect annotations.
+     */
+    private static String describe(Properties props){
+        StringBuilder description = new StringBuilder();
+        for (String name: new TreeSet<>(props.stringPropertyNames())){
+            if (name.startsWith("annotationCache.")) continue;
+            description.append(name).append('=').append(props.getProperty(name).trim()).append('\n');
+        }
+        return description.toString();
+    }
+
+    private static String hash(String text){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b: digest){
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public long getMemoryHits(){ return memoryHits.get(); }
+    public long getDiskHits(){ return diskHits.get(); }
+    public long getMisses(){ return misses.get(); }
+
+    public void printStatistics(){
+        int size;
+        synchronized (memory){
+            size = memory.size();
+        }
+        System.out.println("Annotation cache: in memory=" + size
+                + ", memory hits=" + getMemoryHits()
+                + ", disk hits=" + getDiskHits()
+                + ", misses=" + getMisses());
+    }
+}
@@ -1,6 +1,6 @@
 package jaist.summarization;
 
-import edu.stanford.nlp.pipeline.EntityMentionsAnnotator;
+import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.logging.RedwoodConfiguration;
 
@@ -8,23 +8,80 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by chientran on 9/29/15.
+ *
+ * Holds a fixed pool of pre-warmed CoreNLP pipelines. A pipeline is confined to one thread between
+ * {@link #checkout()} and {@link #release(StanfordCoreNLP)}, so callers never share parse/dcoref state.
  */
 public class AnnotatorHub {
+    private static final String POOL_SIZE_PROPERTY = "pipeline.poolSize";
+    // each pipeline holds its own parser and coref models, so the default never grows past this many
+    private static final int MAX_DEFAULT_POOL_SIZE = 4;
+    private static final String LIGHT_ANNOTATORS_PROPERTY = "pipeline.lightAnnotators";
+    private static final String DEFAULT_LIGHT_ANNOTATORS = "tokenize, ssplit, pos, lemma, stopword";
+
     private static AnnotatorHub instance = null;
+    private static int requestedPoolSize = 0;
+    private static int annotationThreads = 1;
+
+    private BlockingQueue<StanfordCoreNLP> pipelines = null;
+    private volatile StanfordCoreNLP lightPipeline = null;
+    private Properties props;
+    private int poolSize;
 
-    private StanfordCoreNLP pipeline = null;
-    private EntityMentionsAnnotator entityMentionsAnnotator = null;
+    private long createdAt;
+    private AtomicLong checkouts = new AtomicLong();
+    private AtomicLong totalWaitNanos = new AtomicLong();
+    private AtomicLong maxWaitNanos = new AtomicLong();
+    private AtomicLong totalBusyNanos = new AtomicLong();
+    private AtomicInteger inUse = new AtomicInteger();
+    private AtomicInteger peakInUse = new AtomicInteger();
+    private Map<StanfordCoreNLP, Long> checkoutTimes = new ConcurrentHashMap<>();
 
     protected AnnotatorHub(){
+        Properties props = loadProperties();
+
+        this.props = props;
+        this.poolSize = requestedPoolSize;
+        if (poolSize <= 0){
+            String size = props.getProperty(POOL_SIZE_PROPERTY, "").trim();
+            poolSize = size.isEmpty() ? Math.min(annotationThreads, MAX_DEFAULT_POOL_SIZE) : Integer.parseInt(size);
+        }
+        poolSize = Math.max(1, poolSize);
+        if (annotationThreads > poolSize){
+            System.out.println("Warning: " + annotationThreads + " annotation threads share " + poolSize
+                    + " CoreNLP pipelines and will wait for each other; raise -pipelines or " + POOL_SIZE_PROPERTY);
+        }
+
+        this.pipelines = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++){
+            // CoreNLP caches annotators in a static pool keyed by their properties; clear it so
+            // every pipeline gets its own parser and coref instances instead of sharing them
+            StanfordCoreNLP.clearAnnotatorPool();
+            pipelines.add(new StanfordCoreNLP(props));
+        }
+
+        this.createdAt = System.nanoTime();
+    }
+
+    /**
+     * Reads resources/config.properties, falling back to the default annotators when it cannot be loaded.
+     */
+    static Properties loadProperties(){
         Properties props = new Properties();
         try {
             String propFilename = "resources/config.properties";
 
-            InputStream inputStream = getClass().getClassLoader().getResourceAsStream(propFilename);
+            InputStream inputStream = AnnotatorHub.class.getClassLoader().getResourceAsStream(propFilename);
 
             if (inputStream != null) {
                 props.load(inputStream);
@@ -34,12 +91,28 @@ public class AnnotatorHub {
             props.setProperty("annotators", "tokenize, ssplit, pos, lemma, ner, parse, dcoref, stopword");
         }
 
-        this.pipeline = new StanfordCoreNLP(props);
+        return props;
+    }
 
-        this.entityMentionsAnnotator = new EntityMentionsAnnotator("entitymentions", new Properties());
+    /**
+     * Sets the number of pipelines to build. Only effective before the first call to {@link #getInstance()};
+     * otherwise the value of pipeline.poolSize in config.properties is used, and without it one pipeline per
+     * annotation thread, up to 4.
+     */
+    public static synchronized void setPoolSize(int size){
+        requestedPoolSize = size;
     }
 
-    public static AnnotatorHub getInstance(){
+    /**
+     * Number of threads that will annotate at the same time. Sizes the pool when neither
+     * {@link #setPoolSize(int)} nor pipeline.poolSize gives a size, and a warning is printed when the pool ends
+     * up smaller. Only effective before the first call to {@link #getInstance()}.
+     */
+    public static synchronized void setAnnotationThreads(int threads){
+        annotationThreads = Math.max(1, threads);
+    }
+
+    public static synchronized AnnotatorHub getInstance(){
         if (instance == null){
             instance = new AnnotatorHub();
         }
@@ -47,12 +120,108 @@ public class AnnotatorHub {
         return instance;
     }
 
-    public StanfordCoreNLP getPipeline(){
-        return this.pipeline;
+    /**
+     * Borrows a pipeline, blocking until one is free. The caller must hand it back with {@link #release}.
+     */
+    public StanfordCoreNLP checkout() throws InterruptedException{
+        long start = System.nanoTime();
+        StanfordCoreNLP pipeline = pipelines.take();
+        long now = System.nanoTime();
+
+        long waited = now - start;
+        checkouts.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        checkoutTimes.put(pipeline, now);
+
+        return pipeline;
     }
 
-    public EntityMentionsAnnotator getEntityMentionsAnnotator(){
-        return this.entityMentionsAnnotator;
+    /**
+     * Hands back a pipeline taken with {@link #checkout()}.
+     *
+     * @throws IllegalArgumentException if the pipeline is not checked out, e.g. released twice or not from this
+     *         pool; the pool is left unchanged
+     */
+    public void release(StanfordCoreNLP pipeline){
+        Long checkedOutAt = checkoutTimes.remove(pipeline);
+        if (checkedOutAt == null){
+            throw new IllegalArgumentException("Pipeline is not checked out of this pool");
+        }
+        totalBusyNanos.addAndGet(System.nanoTime() - checkedOutAt);
+        inUse.decrementAndGet();
+        pipelines.add(pipeline);
     }
 
+    /**
+     * Runs the full pipeline on the given annotation using whichever pooled pipeline is free.
+     */
+    public void annotate(Annotation annotation){
+        StanfordCoreNLP pipeline;
+        try {
+            pipeline = checkout();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a CoreNLP pipeline", e);
+        }
+
+        try {
+            pipeline.annotate(annotation);
+        }finally {
+            release(pipeline);
+        }
+    }
+
+    /**
+     * Tokenises, lemmatises and marks stopwords without parsing or coreference, for short texts that only need
+     * their lemmas. The light pipeline is shared by all threads and built on first use.
+     */
+    public void annotateLight(Annotation annotation){
+        getLightPipeline().annotate(annotation);
+    }
+
+    private StanfordCoreNLP getLightPipeline(){
+        if (lightPipeline == null){
+            synchronized (this){
+                if (lightPipeline == null){
+                    Properties lightProps = new Properties();
+                    lightProps.putAll(props);
+                    lightProps.setProperty("annotators", props.getProperty(LIGHT_ANNOTATORS_PROPERTY, DEFAULT_LIGHT_ANNOTATORS));
+                    lightPipeline = new StanfordCoreNLP(lightProps);
+                }
+            }
+        }
+
+        return lightPipeline;
+    }
+
+    public int getPoolSize(){ return poolSize; }
+    public int getInUse(){ return inUse.get(); }
+    public int getPeakInUse(){ return peakInUse.get(); }
+    public long getCheckouts(){ return checkouts.get(); }
+    public long getTotalWaitMillis(){ return totalWaitNanos.get() / 1000000; }
+    public long getMaxWaitMillis(){ return maxWaitNanos.get() / 1000000; }
+
+    /**
+     * Fraction of the pool's lifetime capacity (pool size x elapsed time) spent annotating.
+     */
+    public double getUtilisation(){
+        long elapsed = System.nanoTime() - createdAt;
+        if (elapsed <= 0){
+            return 0.0;
+        }
+        return (double) totalBusyNanos.get() / ((double) elapsed * poolSize);
+    }
+
+    public void printStatistics(){
+        long count = checkouts.get();
+        System.out.println("Pipeline pool: size=" + poolSize
+                + ", checkouts=" + count
+                + ", in use=" + getInUse()
+                + ", peak in use=" + getPeakInUse()
+                + ", avg wait=" + (count == 0 ? 0 : getTotalWaitMillis() / count) + "ms"
+                + ", max wait=" + getMaxWaitMillis() + "ms"
+                + ", utilisation=" + String.format("%.1f%%", getUtilisation() * 100));
+    }
 }
@@ -0,0 +1,283 @@
+package jaist.summarization;
+
+import jaist.summarization.solver.OptimizationModel;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Summarises many topic folders at once. Every topic goes through the stages annotate, extract, score, build,
+ * solve and write, each with its own workers and a small bounded queue in front of it, so CoreNLP, model
+ * building and the solver work on different topics at the same time while only a few topics are held in memory
+ * between stages. Each summary is written to summary_results/<topic>_system.txt as soon as its topic is solved.
+ */
+public class BatchSummarizer {
+    public enum Source {
+        /** annotate the documents of each folder */
+        DOCUMENTS,
+        /** reload stats/<topic> written by an earlier run, see Parser.loadDataFromFiles */
+        STATS,
+        /** reload stats/<topic>/model.bin, see Parser.loadModel */
+        BINARY
+    }
+
+    static String SUMMARY_FOLDER_NAME = "summary_results";
+
+    private int maxSentence;
+    private double vpThreshold;
+    private int maxWords;
+    private boolean isDucData;
+    private String solver;
+
+    private Source source = Source.DOCUMENTS;
+    private boolean exportOnly = false;
+    private int annotationThreads;
+    private int solverThreads;
+    private int solverJobs = 0;
+    private int queueSize = 2;
+    private double timeLimit = 0;
+    private double mipGap = 0;
+    private boolean fastMode = false;
+    private boolean warmStart = true;
+    private boolean presolve = true;
+    private int topK = 0;
+
+    private AtomicInteger finished = new AtomicInteger();
+    private AtomicInteger failed = new AtomicInteger();
+
+    public BatchSummarizer(int maxSentence, double vpThreshold, int maxWords, boolean isDucData, String solver){
+        this.maxSentence = maxSentence;
+        this.vpThreshold = vpThreshold;
+        this.maxWords = maxWords;
+        this.isDucData = isDucData;
+        this.solver = solver;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.annotationThreads = cores;
+        this.solverThreads = cores;
+    }
+
+    public void setSource(Source source){ this.source = source; }
+
+    public void setExportOnly(boolean exportOnly){ this.exportOnly = exportOnly; }
+
+    /**
+     * @param threads documents annotated at the same time over all topics (also capped by the pipeline pool)
+     */
+    public void setAnnotationThreads(int threads){ this.annotationThreads = Math.max(1, threads); }
+
+    /**
+     * @param threads threads shared by the scoring, model building and solving of all topics
+     */
+    public void setSolverThreads(int threads){ this.solverThreads = Math.max(1, threads); }
+
+    /**
+     * @param jobs topics solved at the same time, each with an equal share of the solver threads; 0 solves
+     *             up to one topic per solver thread
+     */
+    public void setSolverJobs(int jobs){ this.solverJobs = Math.max(0, jobs); }
+
+    public void setTimeLimit(double seconds){ this.timeLimit = seconds; }
+
+    public void setMipGap(double gap){ this.mipGap = gap; }
+
+    /**
+     * @param fastMode write greedy summaries instead of solving the ILP
+     */
+    public void setFastMode(boolean fastMode){ this.fastMode = fastMode; }
+
+    public void setWarmStart(boolean warmStart){ this.warmStart = warmStart; }
+
+    public void setPresolve(boolean presolve){ this.presolve = presolve; }
+
+    /**
+     * @param topK noun and verb phrases kept by the presolve, highest score first; 0 keeps all
+     */
+    public void setTopK(int topK){ this.topK = Math.max(0, topK); }
+
+    /**
+     * @param size topics that may wait in front of each stage before the stage feeding it blocks
+     */
+    public void setQueueSize(int size){ this.queueSize = Math.max(1, size); }
+
+    public void run(String[] folderNames){
+        List<Topic> topics = new ArrayList<>();
+        for (String folderName: folderNames){
+            topics.add(new Topic(new File(folderName)));
+        }
+        if (topics.isEmpty()) return;
+
+        int annotationSlots = Math.min(topics.size(), annotationThreads);
+        int documentThreads = Math.max(1, annotationThreads / annotationSlots);
+        int solverSlots = Math.min(topics.size(), solverJobs > 0 ? solverJobs : solverThreads);
+        int threadsPerSolve = Math.max(1, solverThreads / solverSlots);
+
+        System.out.println("Batch of " + topics.size() + " topics: " + annotationSlots + " annotated at a time with "
+                + documentThreads + " threads each, " + solverSlots + " solved at a time with " + threadsPerSolve
+                + " threads each, " + queueSize + " topics queued per stage");
+
+        StagedPipeline<Topic> pipeline = new StagedPipeline<>(queueSize, (topic, stage, e) -> {
+            // buildModel and solveModel dispose their model when they fail
+            failed.incrementAndGet();
+            topic.release();
+            System.out.println("Topic " + topic.name + " failed in stage " + stage + ": " + e);
+            e.printStackTrace();
+        });
+
+        pipeline.addStage("annotate", annotationSlots, topic -> annotate(topic, documentThreads));
+        pipeline.addStage("extract", 1, topic -> extract(topic, threadsPerSolve));
+        if (exportOnly){
+            pipeline.addStage("release", 1, topic -> {
+                topic.release();
+                finished.incrementAndGet();
+            });
+        }else if (fastMode){
+            pipeline.addStage("score", 1, topic -> topic.parser.scorePhrases());
+            pipeline.addStage("greedy", solverSlots, topic -> topic.summary = topic.parser.summarizeGreedily());
+            pipeline.addStage("write", 1, this::write);
+        }else{
+            pipeline.addStage("score", 1, topic -> topic.parser.scorePhrases());
+            pipeline.addStage("build", 1, topic -> {
+                try {
+                    topic.model = topic.parser.buildModel();
+                }catch (Exception | OutOfMemoryError e){
+                    summarizeGreedily(topic, "build", e);
+                }
+            });
+            pipeline.addStage("solve", solverSlots, topic -> {
+                if (topic.model == null) return;
+                try {
+                    topic.summary = topic.parser.solveModel(topic.model);
+                }catch (Exception | OutOfMemoryError e){
+                    summarizeGreedily(topic, "solve", e);
+                }
+                topic.model = null;
+            });
+            pipeline.addStage("write", 1, this::write);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            pipeline.run(topics);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            System.out.println("Batch interrupted");
+        }
+
+        System.out.println("Batch finished in " + (System.currentTimeMillis() - start) + "ms: "
+                + finished.get() + " topics done, " + failed.get() + " failed");
+        pipeline.printStatistics();
+        AnnotatorHub.getInstance().printStatistics();
+        AnnotationCache.getInstance().printStatistics();
+    }
+
+    /**
+     * Runs CoreNLP over the topic's documents, or loads the topic from an earlier export.
+     */
+    private void annotate(Topic topic, int documentThreads) throws IOException{
+        topic.parser = new Parser(maxSentence, vpThreshold, maxWords, documentThreads, isDucData);
+        topic.parser.setSolver(solver);
+        topic.parser.setTimeLimit(timeLimit);
+        topic.parser.setMipGap(mipGap);
+        topic.parser.setWarmStart(warmStart);
+        topic.parser.setPresolve(presolve);
+        topic.parser.setTopK(topK);
+
+        switch (source){
+            case BINARY:
+                topic.parser.loadModel(new File(Parser.STAT_FOLDER_NAME + "/" + topic.name + "/" + Parser.MODEL_FILE_NAME));
+                break;
+            case STATS:
+                topic.parser.loadDataFromFiles(topic.name);
+                break;
+            default:
+                topic.annotated = topic.parser.annotateDocuments(topic.files);
+        }
+    }
+
+    /**
+     * Extracts phrases, corefs and the indicator matrix from freshly annotated documents and exports them.
+     */
+    private void extract(Topic topic, int solverThreads){
+        if (topic.annotated != null){
+            topic.parser.addDocuments(topic.annotated);
+            topic.annotated = null;
+            topic.parser.saveDataToFiles(topic.name);
+        }
+
+        topic.parser.setThreads(solverThreads);
+        System.out.println("Topic " + topic.name + " prepared at " + System.currentTimeMillis());
+    }
+
+    /**
+     * Fallback when the model of a topic cannot be built or solved: the greedy summary, or an empty one when
+     * that fails as well, so the topic still gets its summary file.
+     */
+    private void summarizeGreedily(Topic topic, String stage, Throwable e){
+        System.out.println("Topic " + topic.name + " failed in stage " + stage + ", falling back to the greedy summary: " + e);
+        e.printStackTrace();
+
+        try {
+            topic.summary = topic.parser.summarizeGreedily();
+        }catch (Exception | OutOfMemoryError ex){
+            System.out.println("Greedy summary of topic " + topic.name + " failed: " + ex);
+            topic.summary = "";
+        }
+    }
+
+    private void write(Topic topic){
+        topic.parser.printLog();
+        writeSummary(topic.name, topic.summary);
+        topic.release();
+
+        System.out.println("Topic " + topic.name + " summarized (" + finished.incrementAndGet() + " done)");
+    }
+
+    static void writeSummary(String topicName, String summary){
+        File summaryFolder = new File(SUMMARY_FOLDER_NAME);
+        if (!summaryFolder.exists()){
+            summaryFolder.mkdirs();
+        }
+
+        try (PrintWriter out = new PrintWriter(SUMMARY_FOLDER_NAME + "/" + topicName + "_system.txt")){
+            out.print(summary);
+        }catch (FileNotFoundException ex){
+            System.out.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * A topic and whatever its last finished stage produced.
+     */
+    private static class Topic {
+        String name;
+        File[] files;
+
+        Parser parser;
+        List<InputDocument> annotated;
+        OptimizationModel model;
+        String summary;
+
+        Topic(File folder){
+            if (folder.isDirectory()){
+                name = folder.getName();
+                files = folder.listFiles();
+            }else{
+                name = folder.getParent().substring(folder.getParent().lastIndexOf("/")+1);
+                System.out.println("Single document summarization. For multi-doc summarization, please specify a folder");
+                files = new File[]{folder};
+            }
+        }
+
+        void release(){
+            parser = null;
+            annotated = null;
+            model = null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package jaist.summarization;
+
+import java.util.*;
+
+/**
+ * Per-run mapping from concept strings (lemmas, bigrams and named entities) to dense int ids, so phrases and
+ * paragraphs can store their concepts as sorted int arrays.
+ */
+public class ConceptDictionary {
+    private HashMap<String, Integer> ids = new HashMap<>();
+    private List<String> concepts = new ArrayList<>();
+
+    public synchronized int intern(String concept){
+        Integer id = ids.get(concept);
+        if (id == null){
+            id = concepts.size();
+            ids.put(concept, id);
+            concepts.add(concept);
+        }
+
+        return id;
+    }
+
+    /**
+     * @return the sorted, distinct ids of the given concepts
+     */
+    public synchronized int[] internAll(Collection<String> conceptStrings){
+        int[] result = new int[conceptStrings.size()];
+        int size = 0;
+        for (String concept: conceptStrings){
+            result[size++] = intern(concept);
+        }
+
+        Arrays.sort(result);
+
+        int distinct = 0;
+        for (int i = 0; i < size; i++){
+            if (distinct == 0 || result[distinct - 1] != result[i]){
+                result[distinct++] = result[i];
+            }
+        }
+
+        return distinct == size ? result : Arrays.copyOf(result, distinct);
+    }
+
+    public synchronized String getConcept(int id){
+        return concepts.get(id);
+    }
+
+    public synchronized List<String> getConcepts(int[] conceptIds){
+        List<String> result = new ArrayList<>(conceptIds.length);
+        for (int id: conceptIds){
+            result.add(concepts.get(id));
+        }
+
+        return result;
+    }
+
+    public synchronized int size(){
+        return concepts.size();
+    }
+}
@@ -0,0 +1,84 @@
+package jaist.summarization;
+
+import jaist.summarization.unit.Phrase;
+
+import java.util.*;
+
+/**
+ * Inverted index from concept to the positions (in the indexed list) of the phrases containing it, so pairs
+ * of phrases with overlapping concepts, and the size of their overlap, are found by walking posting lists
+ * instead of intersecting every pair of concept sets.
+ */
+public class ConceptIndex {
+    private List<Phrase> phrases;
+    // postings[concept] lists, in ascending order, the positions of the phrases containing that concept id
+    private int[][] postings;
+    private int[] sharedCounts;
+    private int[] touched;
+
+    public ConceptIndex(List<Phrase> phrases){
+        this.phrases = phrases;
+
+        int conceptCount = 0;
+        for (Phrase phrase: phrases){
+            int[] concepts = phrase.getConcepts();
+            if (concepts.length > 0){
+                conceptCount = Math.max(conceptCount, concepts[concepts.length - 1] + 1);
+            }
+        }
+
+        int[] postingSizes = new int[conceptCount];
+        for (Phrase phrase: phrases){
+            for (int concept: phrase.getConcepts()){
+                postingSizes[concept]++;
+            }
+        }
+
+        this.postings = new int[conceptCount][];
+        for (int concept = 0; concept < conceptCount; concept++){
+            postings[concept] = new int[postingSizes[concept]];
+            postingSizes[concept] = 0;
+        }
+
+        for (int i = 0; i < phrases.size(); i++){
+            for (int concept: phrases.get(i).getConcepts()){
+                postings[concept][postingSizes[concept]++] = i;
+            }
+        }
+
+        this.sharedCounts = new int[phrases.size()];
+        this.touched = new int[phrases.size()];
+    }
+
+    /**
+     * Calls the visitor once for every position after {@code position} whose phrase shares at least one
+     * concept with it, passing the number of shared concepts. Uses a scratch buffer, so an index must not be
+     * visited from several threads at once.
+     */
+    public void visitOverlaps(int position, OverlapVisitor visitor){
+        int touchedCount = 0;
+
+        for (int concept: phrases.get(position).getConcepts()){
+            int[] posting = postings[concept];
+            // postings are ascending, so skip straight past the earlier positions
+            int start = Arrays.binarySearch(posting, position) + 1;
+            for (int k = start; k < posting.length; k++){
+                int other = posting[k];
+                if (sharedCounts[other] == 0){
+                    touched[touchedCount++] = other;
+                }
+                sharedCounts[other]++;
+            }
+        }
+
+        for (int k = 0; k < touchedCount; k++){
+            int other = touched[k];
+            visitor.visit(other, sharedCounts[other]);
+            sharedCounts[other] = 0;
+        }
+    }
+
+    public interface OverlapVisitor {
+        void visit(int position, int sharedConcepts);
+    }
+}
@@ -0,0 +1,84 @@
+package jaist.summarization;
+
+import java.util.*;
+
+/**
+ * Maps every coreferent mention to the ids of the clusters it belongs to, so two phrases can be tested for
+ * coreference with an int comparison instead of probing every cluster. A mention usually belongs to a single
+ * cluster, but the same string can occur in several chains, so each mention keeps a sorted array of ids.
+ */
+public class CorefIndex {
+    private static final int[] NO_CLUSTERS = new int[0];
+
+    private HashMap<String, int[]> clustersByMention;
+    private List<String[]> clusters;
+
+    public CorefIndex(Map<String, HashSet<String>> corefs){
+        this.clustersByMention = new HashMap<>();
+        this.clusters = new ArrayList<>();
+
+        for (HashSet<String> mentions: corefs.values()){
+            int clusterId = clusters.size();
+            clusters.add(mentions.toArray(new String[mentions.size()]));
+
+            for (String mention: mentions){
+                int[] ids = clustersByMention.get(mention);
+                if (ids == null){
+                    ids = new int[]{clusterId};
+                }else{
+                    // cluster ids are handed out in increasing order, so appending keeps the array sorted
+                    ids = Arrays.copyOf(ids, ids.length + 1);
+                    ids[ids.length - 1] = clusterId;
+                }
+                clustersByMention.put(mention, ids);
+            }
+        }
+    }
+
+    /**
+     * @return the sorted ids of the clusters containing the mention, empty when it is in none
+     */
+    public int[] getClusters(String mention){
+        int[] ids = clustersByMention.get(mention);
+        return ids == null ? NO_CLUSTERS : ids;
+    }
+
+    public String[] getMentions(int clusterId){
+        return clusters.get(clusterId);
+    }
+
+    public int getClusterCount(){
+        return clusters.size();
+    }
+
+    /**
+     * True when both mentions appear together in at least one cluster.
+     */
+    public boolean areCoreferent(String a, String b){
+        int[] clustersA = clustersByMention.get(a);
+        if (clustersA == null){
+            return false;
+        }
+        int[] clustersB = clustersByMention.get(b);
+        if (clustersB == null){
+            return false;
+        }
+
+        if (clustersA.length == 1 && clustersB.length == 1){
+            return clustersA[0] == clustersB[0];
+        }
+
+        int i = 0, j = 0;
+        while (i < clustersA.length && j < clustersB.length){
+            if (clustersA[i] == clustersB[j]){
+                return true;
+            }else if (clustersA[i] < clustersB[j]){
+                i++;
+            }else{
+                j++;
+            }
+        }
+
+        return false;
+    }
+}
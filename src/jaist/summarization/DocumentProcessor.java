@@ -8,16 +8,25 @@ import jaist.summarization.unit.Phrase;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created by chientran on 3/15/16.
  */
 public class DocumentProcessor {
     private boolean isDucData;
+    private int threads;
     private HashMap<String, HashSet<String>> corefs = null;
+    private CorefIndex corefIndex = null;
 
     private List<InputDocument> docs;
     private PhraseMatrix indicatorMatrix;
+    private ConceptDictionary conceptDictionary;
+    private IdAllocator ids;
 
     List<Phrase> nounPhrases;
     List<Phrase> verbPhrases;
@@ -25,9 +34,19 @@ public class DocumentProcessor {
 
     HashSet<String> nouns;
     HashSet<String> verbs;
+    HashMap<String, List<Phrase>> nounPhrasesByContent;
 
     public DocumentProcessor(boolean isDucData, PhraseMatrix indicatorMatrix){
+        this(isDucData, indicatorMatrix, 0);
+    }
+
+    /**
+     * @param threads number of documents annotated concurrently; 0 uses one worker per available core.
+     *                Concurrency is also capped by the size of the AnnotatorHub pipeline pool
+     */
+    public DocumentProcessor(boolean isDucData, PhraseMatrix indicatorMatrix, int threads){
         this.isDucData = isDucData;
+        this.threads = threads;
         this.docs = new ArrayList<>();
         this.indicatorMatrix = indicatorMatrix;
         this.nounPhrases = new ArrayList<>();
@@ -36,36 +55,140 @@ public class DocumentProcessor {
 
         this.nouns = new HashSet<>();
         this.verbs = new HashSet<>();
+        this.nounPhrasesByContent = new HashMap<>();
         this.corefs = new HashMap<>();
+        this.conceptDictionary = new ConceptDictionary();
+        this.ids = new IdAllocator();
     }
 
     public void processDocuments(File[] fileNames) throws IOException{
+        addDocuments(annotateFiles(fileNames));
+    }
+
+    /**
+     * Annotation stage of {@link #processDocuments(File[])}: runs CoreNLP on the files without touching the
+     * phrases, corefs or matrices, so it can overlap with other work on this processor's results.
+     */
+    public List<InputDocument> annotateFiles(File[] fileNames) throws IOException{
+        List<Callable<InputDocument>> tasks = new ArrayList<>();
         for (File filepath: fileNames){
             if (filepath.getName().startsWith(".")) continue;
-            System.out.println(filepath.getAbsolutePath());
+            tasks.add(() -> annotateFile(filepath));
+        }
+
+        return annotateDocuments(tasks);
+    }
+
+    /**
+     * Multi-document counterpart of {@link #processDocument(String)}: the texts are annotated concurrently and
+     * treated like the files of a folder.
+     */
+    public void processTexts(List<String> texts) throws IOException{
+        List<Callable<InputDocument>> tasks = new ArrayList<>();
+        for (String text: texts){
+            tasks.add(() -> new InputDocument(text, isDucData));
+        }
 
-            String text = IOUtils.slurpFile(filepath);
-            processDocument(text);
+        addDocuments(annotateDocuments(tasks));
+    }
+
+    /**
+     * Extraction stage: adds annotated documents, their phrases and corefs to the model, in list order.
+     */
+    public void addDocuments(List<InputDocument> inputDocuments){
+        // annotation runs concurrently, but phrases, corefs and the indicator matrix
+        // are merged in input order so the model does not depend on thread scheduling
+        for (InputDocument inputDocument: inputDocuments){
+            addDocument(inputDocument);
         }
 
         removeRedundantCorefs();
     }
 
     public void processDocument(String text){
-        InputDocument inputDocument = new InputDocument(text, isDucData);
+        addDocument(new InputDocument(text, isDucData));
+    }
+
+    private void addDocument(InputDocument inputDocument){
+        inputDocument.internConcepts(conceptDictionary);
         this.docs.add(inputDocument);
         extractPhrases(inputDocument);
         this.corefs.putAll(inputDocument.getCoreferences());
+        this.corefIndex = null;
+    }
+
+    private List<InputDocument> annotateDocuments(List<Callable<InputDocument>> tasks) throws IOException{
+        List<InputDocument> inputDocuments = new ArrayList<>();
+        int poolSize = Math.min(tasks.size(), threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        // workers only ever annotate through pipelines checked out of the hub, which is built here on the calling
+        // thread before any worker starts; more workers than pooled pipelines would only queue up inside it
+        AnnotatorHub hub = AnnotatorHub.getInstance();
+        poolSize = Math.min(poolSize, hub.getPoolSize());
+
+        if (poolSize <= 1){
+            for (Callable<InputDocument> task: tasks){
+                inputDocuments.add(call(task));
+            }
+            return inputDocuments;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            List<Future<InputDocument>> futures = new ArrayList<>();
+            for (Callable<InputDocument> task: tasks){
+                futures.add(executor.submit(task));
+            }
+
+            for (Future<InputDocument> future: futures){
+                inputDocuments.add(future.get());
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while annotating documents", e);
+        }catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }finally {
+            executor.shutdownNow();
+        }
+
+        return inputDocuments;
+    }
+
+    private InputDocument call(Callable<InputDocument> task) throws IOException{
+        try {
+            return task.call();
+        }catch (IOException | RuntimeException e){
+            throw e;
+        }catch (Exception e){
+            throw new IOException(e);
+        }
+    }
+
+    private InputDocument annotateFile(File filepath) throws IOException{
+        System.out.println(filepath.getAbsolutePath());
+
+        String text = IOUtils.slurpFile(filepath);
+        return new InputDocument(text, isDucData);
     }
 
     private void extractPhrases(InputDocument inputDocument){
-        PhraseExtractor extractor = new PhraseExtractor(inputDocument, indicatorMatrix);
-        List<Phrase> phrases = extractor.extractAllPhrases();
+        PhraseExtractor extractor = new PhraseExtractor(inputDocument, indicatorMatrix, ids);
+        addPhrases(extractor.extractAllPhrases());
+    }
 
+    private void addPhrases(List<Phrase> phrases){
         for (Phrase phrase : phrases) {
             if (phrase.isNP()) {
                 nounPhrases.add(phrase);
                 nouns.add(phrase.getContent());
+                nounPhrasesByContent.computeIfAbsent(phrase.getContent(), k -> new ArrayList<>()).add(phrase);
             } else {
                 verbPhrases.add(phrase);
                 verbs.add(phrase.getContent());
@@ -93,12 +216,38 @@ public class DocumentProcessor {
                 entry.setValue(newMentions);
             }
         }
+
+        this.corefIndex = new CorefIndex(corefs);
+    }
+
+    /**
+     * Loads the state of an earlier run (see ModelStore) instead of annotating documents. The indicator matrix
+     * passed to the constructor must be filled by the caller. Meant for a fresh processor: documents added
+     * afterwards would get phrase ids that collide with the restored ones.
+     */
+    public void restore(ConceptDictionary conceptDictionary, List<Phrase> phrases,
+                        HashMap<String, HashSet<String>> corefs, List<InputDocument> docs){
+        this.conceptDictionary = conceptDictionary;
+        this.docs.addAll(docs);
+        addPhrases(phrases);
+        this.corefs.putAll(corefs);
+        this.corefIndex = new CorefIndex(this.corefs);
     }
 
     public HashMap<String, HashSet<String>> getCorefs(){
         return this.corefs;
     }
 
+    /**
+     * Cluster membership of the current corefs, rebuilt only after documents were added since the last call.
+     */
+    public CorefIndex getCorefIndex(){
+        if (corefIndex == null){
+            corefIndex = new CorefIndex(corefs);
+        }
+        return this.corefIndex;
+    }
+
     public List<Phrase> getNounPhrases(){
         return this.nounPhrases;
     }
@@ -115,6 +264,13 @@ public class DocumentProcessor {
         return this.nouns;
     }
 
+    /**
+     * Noun phrases grouped by their content, in extraction order.
+     */
+    public HashMap<String, List<Phrase>> getNounPhrasesByContent(){
+        return this.nounPhrasesByContent;
+    }
+
     public HashSet<String> getVerbs(){
         return this.verbs;
     }
@@ -122,4 +278,12 @@ public class DocumentProcessor {
     public List<InputDocument> getDocs(){
         return this.docs;
     }
+
+    public IdAllocator getIdAllocator(){
+        return this.ids;
+    }
+
+    public ConceptDictionary getConceptDictionary(){
+        return this.conceptDictionary;
+    }
 }
@@ -0,0 +1,163 @@
+package jaist.summarization;
+
+import jaist.summarization.unit.Phrase;
+
+import java.util.*;
+
+/**
+ * Builds a feasible solution of the summarization ILP without a solver. Starting from an empty summary it
+ * repeatedly adds the step with the best objective gain per word: a new noun phrase together with one of its
+ * compatible verb phrases, or another verb phrase for a noun already chosen. Every step keeps the sentence,
+ * length, i-within-i, pronoun and short sentence constraints satisfied, and the gain of a phrase already
+ * includes the redundancy penalty the n2n/v2v variables would charge against the phrases chosen before it.
+ */
+public class GreedySelector {
+    public interface Similarity {
+        double between(Phrase a, Phrase b);
+    }
+
+    private List<Phrase> nounPhrases;
+    private List<Phrase> verbPhrases;
+    private PhraseMatrix compatibilityMatrix;
+    private Similarity similarity;
+
+    private int maxSentences;
+    private int maxWords;
+    private int minSentenceLength;
+    private int minVerbLength;
+
+    public GreedySelector(List<Phrase> nounPhrases, List<Phrase> verbPhrases, PhraseMatrix compatibilityMatrix,
+                          Similarity similarity){
+        this.nounPhrases = nounPhrases;
+        this.verbPhrases = verbPhrases;
+        this.compatibilityMatrix = compatibilityMatrix;
+        this.similarity = similarity;
+    }
+
+    public void setBudgets(int maxSentences, int maxWords, int minSentenceLength, int minVerbLength){
+        this.maxSentences = maxSentences;
+        this.maxWords = maxWords;
+        this.minSentenceLength = minSentenceLength;
+        this.minVerbLength = minVerbLength;
+    }
+
+    /**
+     * @return the chosen noun phrases, in the order they were chosen, each with its verb phrases
+     */
+    public LinkedHashMap<Phrase, List<Phrase>> select(){
+        int nounCount = nounPhrases.size();
+        int verbCount = verbPhrases.size();
+
+        HashMap<Integer, Integer> verbIndex = new HashMap<>();
+        for (int q = 0; q < verbCount; q++){
+            verbIndex.put(verbPhrases.get(q).getId(), q);
+        }
+
+        int[][] compatibleVerbs = new int[nounCount][];
+        for (int p = 0; p < nounCount; p++){
+            int[] ids = compatibilityMatrix.getRow(nounPhrases.get(p), false);
+            int[] positions = new int[ids.length];
+            int count = 0;
+            for (int id: ids){
+                Integer q = verbIndex.get(id);
+                if (q != null){
+                    positions[count++] = q;
+                }
+            }
+            compatibleVerbs[p] = Arrays.copyOf(positions, count);
+        }
+
+        boolean[] nounAllowed = new boolean[nounCount];
+        double[] nounGain = new double[nounCount];
+        for (int p = 0; p < nounCount; p++){
+            Phrase noun = nounPhrases.get(p);
+            nounAllowed[p] = !noun.isPronoun() && noun.getWordLength() <= maxWords;
+            nounGain[p] = noun.getScore();
+        }
+
+        boolean[] verbAllowed = new boolean[verbCount];
+        double[] verbGain = new double[verbCount];
+        for (int q = 0; q < verbCount; q++){
+            Phrase verb = verbPhrases.get(q);
+            verbAllowed[q] = verb.getSentenceLength() >= minSentenceLength && verb.getWordLength() >= minVerbLength
+                    && verb.getWordLength() <= maxWords;
+            verbGain[q] = verb.getScore();
+        }
+
+        LinkedHashMap<Phrase, List<Phrase>> selection = new LinkedHashMap<>();
+        List<Integer> selectedNouns = new ArrayList<>();
+        int wordsLeft = maxWords;
+
+        while (true){
+            int bestNoun = -1;
+            int bestVerb = -1;
+            boolean newSentence = false;
+            double bestDensity = 0;
+
+            // another verb for a noun already in the summary
+            for (int p: selectedNouns){
+                for (int q: compatibleVerbs[p]){
+                    int words = verbPhrases.get(q).getWordLength();
+                    if (verbAllowed[q] && words <= wordsLeft && verbGain[q] > 0 && verbGain[q] / Math.max(words, 1) > bestDensity){
+                        bestDensity = verbGain[q] / Math.max(words, 1);
+                        bestNoun = p;
+                        bestVerb = q;
+                    }
+                }
+            }
+
+            // a new sentence made of a noun and its best verb
+            if (selectedNouns.size() < maxSentences){
+                for (int p = 0; p < nounCount; p++){
+                    if (!nounAllowed[p]) continue;
+
+                    int nounWords = nounPhrases.get(p).getWordLength();
+                    for (int q: compatibleVerbs[p]){
+                        int words = nounWords + verbPhrases.get(q).getWordLength();
+                        double gain = nounGain[p] + verbGain[q];
+                        if (verbAllowed[q] && words <= wordsLeft && gain > 0 && gain / Math.max(words, 1) > bestDensity){
+                            bestDensity = gain / Math.max(words, 1);
+                            bestNoun = p;
+                            bestVerb = q;
+                            newSentence = true;
+                        }
+                    }
+                }
+            }
+
+            if (bestNoun < 0){
+                break;
+            }
+
+            Phrase noun = nounPhrases.get(bestNoun);
+            if (newSentence){
+                selectedNouns.add(bestNoun);
+                selection.put(noun, new ArrayList<>());
+                wordsLeft -= noun.getWordLength();
+                take(noun, nounPhrases, nounAllowed, nounGain);
+            }
+
+            Phrase verb = verbPhrases.get(bestVerb);
+            selection.get(noun).add(verb);
+            wordsLeft -= verb.getWordLength();
+            take(verb, verbPhrases, verbAllowed, verbGain);
+        }
+
+        return selection;
+    }
+
+    /**
+     * Marks a phrase as chosen: it and the phrases it contains or is contained in are no longer allowed, and
+     * the gain of every other phrase of the same type loses the redundancy penalty of the new pair.
+     */
+    private void take(Phrase chosen, List<Phrase> phrases, boolean[] allowed, double[] gain){
+        for (int i = 0; i < phrases.size(); i++){
+            Phrase other = phrases.get(i);
+            if (other == chosen || other.getId().equals(chosen.getParentId()) || chosen.getId().equals(other.getParentId())){
+                allowed[i] = false;
+            }else if (allowed[i]){
+                gain[i] -= (chosen.getScore() + other.getScore()) * similarity.between(chosen, other);
+            }
+        }
+    }
+}
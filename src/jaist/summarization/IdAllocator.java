@@ -0,0 +1,29 @@
+package jaist.summarization;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the phrase and sentence ids of one run. Noun and verb phrases are numbered separately, densely
+ * and from zero, so ids can index arrays sized by the phrase counts, and concurrent runs never share counters.
+ */
+public class IdAllocator {
+    private AtomicInteger nounPhraseIds = new AtomicInteger();
+    private AtomicInteger verbPhraseIds = new AtomicInteger();
+    private AtomicInteger sentenceIds = new AtomicInteger();
+
+    public int nextPhraseId(boolean isNP){
+        return isNP ? nounPhraseIds.getAndIncrement() : verbPhraseIds.getAndIncrement();
+    }
+
+    public int nextSentenceId(){
+        return sentenceIds.getAndIncrement();
+    }
+
+    public int getPhraseCount(boolean isNP){
+        return isNP ? nounPhraseIds.get() : verbPhraseIds.get();
+    }
+
+    public int getSentenceCount(){
+        return sentenceIds.get();
+    }
+}
@@ -24,7 +24,10 @@ public class InputDocument {
     private HashMap<String, HashSet<String>> corefs;
     private static final String PARAGRAPH_SPLIT_REGEX = "(?m)(?=^\\s{4})";
     private ArrayList<Paragraph> paragraphs;
+    // concept frequencies of each paragraph by name, until they are interned into the run's dictionary
+    private List<HashMap<String, Integer>> paragraphConcepts;
     private String headline;
+    private ConceptDictionary conceptDictionary;
 
     public InputDocument(String text){
         this(text, false);
@@ -34,12 +37,33 @@ public class InputDocument {
             text = processDucDocument(text);
         }
 
-        this.annotation = new Annotation(text);
-        AnnotatorHub.getInstance().getPipeline().annotate(annotation);
+        this.annotation = AnnotationCache.getInstance().annotate(text);
 
         extractNamedEntities();
         extractCoreferences();
         buildWordToLemmaMap();
+        extractParagraphConcepts();
+    }
+
+    /**
+     * A document restored from saved statistics: it carries the paragraphs needed for scoring but no
+     * annotation, so it has no sentences, named entities or coreferences of its own.
+     */
+    public InputDocument(List<Paragraph> paragraphs, ConceptDictionary conceptDictionary){
+        this.paragraphs = new ArrayList<>(paragraphs);
+        this.conceptDictionary = conceptDictionary;
+        this.namedEntities = new HashSet<>();
+        this.wordToLemmaMap = new HashMap<>();
+        this.corefs = new HashMap<>();
+    }
+
+    /**
+     * Interns the document's concepts into the run's dictionary and builds its paragraphs. Called once per run,
+     * in document order, so concept ids do not depend on which annotation worker finished first. The concepts
+     * themselves are extracted in the constructor.
+     */
+    public void internConcepts(ConceptDictionary conceptDictionary){
+        this.conceptDictionary = conceptDictionary;
         prepareParagraphs();
     }
 
@@ -71,15 +95,27 @@ public class InputDocument {
         }
     }
 
-    private void prepareParagraphs(){
-        paragraphs = new ArrayList<>();
+    private void extractParagraphConcepts(){
+        paragraphConcepts = new ArrayList<>();
         String[] paragraphTexts = annotation.toString().split(PARAGRAPH_SPLIT_REGEX);
 
         for (String paragraphText: paragraphTexts){
-            HashMap<String, Integer> paragraphConceptsWithFrequency = extractConceptsFromString(paragraphText);
-            Paragraph paragraph = new Paragraph(paragraphConceptsWithFrequency);
+            paragraphConcepts.add(extractConceptsFromString(paragraphText));
+        }
+    }
+
+    private void prepareParagraphs(){
+        paragraphs = new ArrayList<>();
 
-            paragraphs.add(paragraph);
+        for (HashMap<String, Integer> paragraphConceptsWithFrequency: paragraphConcepts){
+            int[] concepts = conceptDictionary.internAll(paragraphConceptsWithFrequency.keySet());
+            int[] frequencies = new int[concepts.length];
+            for (Map.Entry<String, Integer> entry: paragraphConceptsWithFrequency.entrySet()){
+                int id = conceptDictionary.intern(entry.getKey());
+                frequencies[Arrays.binarySearch(concepts, id)] = entry.getValue();
+            }
+
+            paragraphs.add(new Paragraph(concepts, frequencies));
         }
     }
 
@@ -154,6 +190,13 @@ public class InputDocument {
         return concepts;
     }
 
+    /**
+     * @return the sorted ids of the concepts found in the given text
+     */
+    public int[] extractConceptIds(String content){
+        return conceptDictionary.internAll(extractConceptsFromString(content).keySet());
+    }
+
     private void increaseFrequency(HashMap<String, Integer> conceptsToFrequency, String key){
         Integer count = 0;
 
@@ -167,10 +210,19 @@ public class InputDocument {
     }
 
     public List<CoreMap> getSentences(){
+        if (annotation == null){
+            return new ArrayList<>();
+        }
         return annotation.get(CoreAnnotations.SentencesAnnotation.class);
     }
 
+    /**
+     * @throws IllegalStateException if the concepts of an annotated document were not interned yet
+     */
     public List<Paragraph> getParagraphs(){
+        if (paragraphs == null){
+            throw new IllegalStateException("Paragraphs are built by internConcepts, which has not run on this document");
+        }
         return this.paragraphs;
     }
 
@@ -178,5 +230,9 @@ public class InputDocument {
         return this.corefs;
     }
 
+    public ConceptDictionary getConceptDictionary(){
+        return this.conceptDictionary;
+    }
+
 }
 
@@ -0,0 +1,77 @@
+package jaist.summarization;
+
+import jaist.summarization.unit.Phrase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Scores phrases against all documents on a fork-join pool. The per-document salience tables are built
+ * once and only read afterwards, and each phrase chunk writes to its own slice of a primitive score array.
+ */
+public class ParallelPhraseScorer {
+    private static final int CHUNK_SIZE = 512;
+
+    private ForkJoinPool pool;
+    private List<PhraseScorer> scorers;
+
+    public ParallelPhraseScorer(List<InputDocument> docs, ForkJoinPool pool){
+        this.pool = pool;
+        this.scorers = new ArrayList<>(docs.size());
+
+        PhraseScorer[] built = new PhraseScorer[docs.size()];
+        pool.submit(() -> IntStream.range(0, docs.size()).parallel().forEach(d ->
+                built[d] = new PhraseScorer(docs.get(d))
+        )).join();
+
+        for (PhraseScorer scorer: built){
+            scorers.add(scorer);
+        }
+    }
+
+    /**
+     * @return for each phrase, the sum of its scores against every document
+     */
+    public double[] score(List<Phrase> phrases){
+        double[] scores = new double[phrases.size()];
+        pool.invoke(new ScoringTask(phrases, scores, 0, phrases.size()));
+
+        return scores;
+    }
+
+    private class ScoringTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private List<Phrase> phrases;
+        private double[] scores;
+        private int from;
+        private int to;
+
+        ScoringTask(List<Phrase> phrases, double[] scores, int from, int to){
+            this.phrases = phrases;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute(){
+            if (to - from <= CHUNK_SIZE){
+                for (int i = from; i < to; i++){
+                    Phrase phrase = phrases.get(i);
+                    double score = 0.0d;
+                    for (PhraseScorer scorer: scorers){
+                        score += scorer.scorePhrase(phrase);
+                    }
+                    scores[i] = score;
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScoringTask(phrases, scores, from, middle), new ScoringTask(phrases, scores, middle, to));
+        }
+    }
+}
@@ -7,12 +7,15 @@ import jaist.summarization.phrase.PhraseExtractor;
 import jaist.summarization.unit.Phrase;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.*;
-import gurobi.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import jaist.summarization.solver.*;
 import jaist.summarization.utils.ModelExporter;
+import jaist.summarization.utils.ModelImporter;
+import jaist.summarization.utils.ModelStore;
 import org.apache.commons.cli.*;
 
 /**
@@ -21,7 +24,6 @@ import org.apache.commons.cli.*;
 
 public class Parser {
     Properties props = null;
-    StanfordCoreNLP pipeline = null;
     PhraseMatrix indicatorMatrix = null;
     PhraseMatrix compatibilityMatrix = null;
     Integer[][] similarityMatrix = null;
@@ -29,28 +31,38 @@ public class Parser {
     List<InputDocument> docs = null;
 
     PhraseMatrix alternativeVPs = null;
-    PhraseMatrix alternativeNPs = null;
+    // noun phrases of each coreference cluster; a phrase's clusters come from corefIndex by its content
+    List<List<Phrase>> alternativeNPs = null;
     HashMap<String, HashSet<String>> corefs = null;
+    CorefIndex corefIndex = null;
 
     List<Phrase> nounPhrases;
     List<Phrase> verbPhrases;
+    // the phrases that get variables, see Presolver
+    List<Phrase> modelNouns;
+    List<Phrase> modelVerbs;
     List<Phrase> allPhrases;
 
-    HashMap<Integer, GRBVar> nounVariables;
-    HashMap<Integer, GRBVar> verbVariables;
-    HashMap<String, GRBVar> gammaVariables;
-    HashMap<String, GRBVar> nounToNounVariables;
-    HashMap<String, GRBVar> verbToVerbVariables;
+    HashMap<Integer, Variable> nounVariables;
+    HashMap<Integer, Variable> verbVariables;
+    HashMap<String, Variable> gammaVariables;
+    HashMap<String, Variable> nounToNounVariables;
+    HashMap<String, Variable> verbToVerbVariables;
 
     HashSet<String> nouns;
     HashSet<String> verbs;
+    HashMap<String, List<Phrase>> nounPhrasesByContent;
+
+    ConceptDictionary conceptDictionary;
 
     DocumentProcessor processor;
 
-    static int DEFAULT_MAXIMUM_SENTENCE = 10;
-    static double DEFAULT_ALTERNATIVE_VP_THRESHOLD = 0.75;
-    static int DEFAULT_MAX_WORD_LENGTH = 100;
+    public static final int DEFAULT_MAXIMUM_SENTENCE = 10;
+    public static final double DEFAULT_ALTERNATIVE_VP_THRESHOLD = 0.75;
+    public static final int DEFAULT_MAX_WORD_LENGTH = 100;
     static int MIN_SENTENCE_LENGTH = 5;
+    static String STAT_FOLDER_NAME = "stats";
+    static String MODEL_FILE_NAME = "model.bin";
     static int MINIMUM_VERB_LENGTH = 2;
 
     int max_sentence = 10;
@@ -58,37 +70,47 @@ public class Parser {
     int max_word_length = 100;
 
     int threads = 0;
+    String solver = OptimizationModel.GUROBI;
+    double timeLimit = 0;
+    double mipGap = 0;
+    boolean warmStart = true;
+    boolean fastMode = false;
+    boolean presolve = true;
+    int topK = 0;
+    LinkedHashMap<Phrase, List<Phrase>> greedySelection = null;
 
     long previousMarkedTime;
 
-    public Parser(int max_sentence, double alternative_vp_threshold, int max_word_length, int threads, boolean isDucData){
-        this(max_sentence, alternative_vp_threshold, max_word_length, isDucData);
-        this.threads = threads;
+    public Parser(int max_sentence, double alternative_vp_threshold, int max_word_length, boolean isDucData) {
+        this(max_sentence, alternative_vp_threshold, max_word_length, 0, isDucData);
     }
 
-    public Parser(int max_sentence, double alternative_vp_threshold, int max_word_length, boolean isDucData) {
+    public Parser(int max_sentence, double alternative_vp_threshold, int max_word_length, int threads, boolean isDucData){
         this.max_sentence = max_sentence;
         this.alternative_vp_threshold = alternative_vp_threshold;
         this.max_word_length = max_word_length;
+        this.threads = threads;
 
         this.props = new Properties();
-        pipeline = AnnotatorHub.getInstance().getPipeline();
+        AnnotatorHub.getInstance();
         indicatorMatrix = new PhraseMatrix();
         compatibilityMatrix = new PhraseMatrix();
         alternativeVPs = new PhraseMatrix();
-        alternativeNPs = new PhraseMatrix();
+        alternativeNPs = new ArrayList<>();
 
         nounPhrases = new ArrayList<>();
         verbPhrases = new ArrayList<>();
         allPhrases = new ArrayList<>();
         corefs = new HashMap<>();
+        corefIndex = new CorefIndex(corefs);
 
         nouns = new HashSet<>();
         verbs = new HashSet<>();
+        nounPhrasesByContent = new HashMap<>();
 
         docs = new ArrayList<>();
 
-        processor = new DocumentProcessor(isDucData, indicatorMatrix);
+        processor = new DocumentProcessor(isDucData, indicatorMatrix, threads);
     }
 
     public Parser(){
@@ -108,11 +130,25 @@ public class Parser {
         options.addOption("word_length", true, "maximum word length");
         options.addOption("vp_threshold", true, "Alternative VP threshold");
         options.addOption("max_sent", true, "maximum # of sentences");
-        options.addOption("in", true, "input folder containing all text files");
+        options.addOption("in", true, "input folders containing all text files, comma separated; folders are summarized concurrently");
         options.addOption("out", true, "Output file");
-        options.addOption("threads", true, "Number of threads");
+        options.addOption("threads", true, "Number of threads for document annotation and the solver");
+        options.addOption("annotation_threads", true, "Documents annotated at the same time across all input folders (default: -threads)");
+        options.addOption("solver_threads", true, "Threads for scoring and solving, shared by all input folders (default: -threads)");
+        options.addOption("solver_jobs", true, "Input folders solved at the same time, splitting the solver threads (default: one per solver thread)");
+        options.addOption("queue_size", true, "Input folders that may wait in front of each batch stage (default: 2)");
+        options.addOption("pipelines", true, "Number of CoreNLP pipelines to keep warm, each needs its own heap (default: one per annotation thread, up to 4)");
+        options.addOption("time_limit", true, "Seconds the solver may spend on each input folder; the best summary found by then is used (default: no limit)");
+        options.addOption("mip_gap", true, "Relative optimality gap at which the solver may stop (default: solver default)");
+        options.addOption("no_presolve", false, "Build variables for phrases the ILP would fix to 0 anyway");
+        options.addOption("top_k", true, "Only give the top K noun and verb phrases by score to the solver (default: all)");
+        options.addOption("fast", false, "Use the greedy summary instead of solving the ILP");
+        options.addOption("no_warm_start", false, "Do not give the greedy summary to the solver as its start solution");
+        options.addOption("solver", true, "ILP solver backend: gurobi (default) or builtin (pure Java, no licence needed)");
         options.addOption("duc", false, "Is DUC data");
         options.addOption("export_only", false, "Should we find the solution or just export the phrases?");
+        options.addOption("from_stats", false, "Load each input set from the XML/text files in stats/<set> instead of annotating it");
+        options.addOption("from_binary", false, "Load each input set from stats/<set>/" + MODEL_FILE_NAME + " instead of annotating it");
 
         CommandLineParser commandLineParser = new DefaultParser();
         CommandLine cmd = commandLineParser.parse(options, args);
@@ -144,83 +180,131 @@ public class Parser {
             threads = Integer.parseInt(cmd.getOptionValue("threads"));
         }
 
+        if (cmd.hasOption("pipelines")){
+            AnnotatorHub.setPoolSize(Integer.parseInt(cmd.getOptionValue("pipelines")));
+        }
+
+        String solver = cmd.getOptionValue("solver", OptimizationModel.GUROBI);
+
         boolean isDucData = cmd.hasOption("duc");
         boolean isExportOnly = cmd.hasOption("export_only");
+        boolean isFromBinary = cmd.hasOption("from_binary");
+        boolean isFromStats = cmd.hasOption("from_stats");
 
         String[] folders = cmd.getOptionValue("in").split(",");
 
-        for (String folderName: folders){
-            File folder = new File(folderName);
-
-            String outputFilename = folder.getName();
+        int cores = Runtime.getRuntime().availableProcessors();
+        BatchSummarizer batch = new BatchSummarizer(sentence_length, vp_threshold, word_length, isDucData, solver);
+        batch.setExportOnly(isExportOnly);
+        batch.setSource(isFromBinary ? BatchSummarizer.Source.BINARY
+                : isFromStats ? BatchSummarizer.Source.STATS : BatchSummarizer.Source.DOCUMENTS);
+        int annotationThreads = Integer.parseInt(cmd.getOptionValue("annotation_threads", String.valueOf(threads > 0 ? threads : cores)));
+        AnnotatorHub.setAnnotationThreads(annotationThreads);
+        batch.setAnnotationThreads(annotationThreads);
+        batch.setSolverThreads(Integer.parseInt(cmd.getOptionValue("solver_threads", String.valueOf(threads > 0 ? threads : cores))));
+        batch.setSolverJobs(Integer.parseInt(cmd.getOptionValue("solver_jobs", "0")));
+        batch.setTimeLimit(Double.parseDouble(cmd.getOptionValue("time_limit", "0")));
+        batch.setMipGap(Double.parseDouble(cmd.getOptionValue("mip_gap", "0")));
+        batch.setPresolve(!cmd.hasOption("no_presolve"));
+        batch.setTopK(Integer.parseInt(cmd.getOptionValue("top_k", "0")));
+        batch.setFastMode(cmd.hasOption("fast"));
+        batch.setWarmStart(!cmd.hasOption("no_warm_start"));
+        batch.setQueueSize(Integer.parseInt(cmd.getOptionValue("queue_size", "2")));
+
+        batch.run(folders);
+    }
 
-            File[] fileNames = null;
+    /**
+     * Threads for scoring, building the compatibility matrix and the solver. Documents are still annotated with
+     * the count given to the constructor.
+     */
+    public void setThreads(int threads){
+        this.threads = threads;
+    }
 
-            if (folder.isDirectory()){
-                fileNames = folder.listFiles();
-            }else{
-                outputFilename = folder.getParent().substring(folder.getParent().lastIndexOf("/")+1);
-                System.out.println("Single document summarization. For multi-doc summarization, please specify a folder");
-                fileNames = new File[]{folder};
-            }
+    public void setSolver(String solver){
+        this.solver = solver;
+    }
 
-            Parser parser = new Parser(sentence_length, vp_threshold, word_length, threads, isDucData);
-            System.out.println("Stanford CoreNLP loaded at " + System.currentTimeMillis());
-            for (File filepath: fileNames){
-                if (filepath.getName().startsWith(".")) continue;
-                System.out.println(filepath.getAbsolutePath());
+    /**
+     * @param seconds solver budget; when it expires the best summary found so far is returned, or a greedy one
+     *                if the solver has none. 0 keeps the solver default.
+     */
+    public void setTimeLimit(double seconds){
+        this.timeLimit = seconds;
+    }
 
-                String text = IOUtils.slurpFile(filepath);
-                parser.processDocument(text);
-            }
+    /**
+     * @param gap relative optimality gap at which the solver may stop; 0 keeps the solver default
+     */
+    public void setMipGap(double gap){
+        this.mipGap = gap;
+    }
 
-            parser.updateModel();
+    /**
+     * @param warmStart whether the greedy summary is given to the solver as its start solution
+     */
+    public void setWarmStart(boolean warmStart){
+        this.warmStart = warmStart;
+    }
 
-            parser.saveDataToFiles(outputFilename);
+    /**
+     * @param presolve whether phrases the ILP would fix to 0 are dropped before the model is built
+     */
+    public void setPresolve(boolean presolve){
+        this.presolve = presolve;
+    }
 
-            if (isExportOnly){
-                continue;
-            }
+    /**
+     * @param topK keep only this many noun and verb phrases, highest score first, when presolving; 0 keeps all
+     */
+    public void setTopK(int topK){
+        this.topK = topK;
+    }
 
-            String summary = parser.generateSummary();
+    /**
+     * @param fastMode return the greedy summary without building or solving the ILP
+     */
+    public void setFastMode(boolean fastMode){
+        this.fastMode = fastMode;
+    }
 
-            PrintWriter out = null;
-            try {
-                String summaryFolderName = "summary_results";
-                File summaryFolder = new File(summaryFolderName);
-                if (!summaryFolder.exists()){
-                    summaryFolder.mkdir();
-                }
+    public void processDocument(String text){
+        processor.processDocument(text);
+        updateModel();
+    }
 
-                out = new PrintWriter(summaryFolderName + "/" + outputFilename + "_system.txt");
-                out.print(summary);
-            } catch (FileNotFoundException ex) {
-                System.out.println(ex.getMessage());
-            } finally {
-                out.close();
-            }
-        }
+    /**
+     * Summarises several texts together, as if they were the files of one input folder.
+     */
+    public void processTexts(List<String> texts) throws IOException{
+        processor.processTexts(texts);
+        updateModel();
+    }
 
+    /**
+     * Annotation stage: runs CoreNLP over the files; pass the result to {@link #addDocuments(List)}.
+     */
+    public List<InputDocument> annotateDocuments(File[] files) throws IOException{
+        return processor.annotateFiles(files);
     }
 
-    public void processDocument(String text){
-        processor.processDocument(text);
+    /**
+     * Extraction stage: extracts the phrases, corefs and indicator matrix of annotated documents.
+     */
+    public void addDocuments(List<InputDocument> annotatedDocuments){
+        processor.addDocuments(annotatedDocuments);
+        updateModel();
     }
 
-    public void processDocuments(File[] files, boolean isDucData){
-        DocumentProcessor processor = new DocumentProcessor(isDucData, indicatorMatrix);
+    public void processDocuments(File[] files){
         try {
             processor.processDocuments(files);
-            nounPhrases = processor.getNounPhrases();
-            verbPhrases = processor.getVerbPhrases();
-            allPhrases = processor.getAllPhrases();
-            corefs = processor.getCorefs();
-            nouns = processor.getNouns();
-            verbs = processor.getVerbs();
-            docs = processor.getDocs();
         }catch(Exception e){
             e.printStackTrace();
         }
+
+        updateModel();
     }
 
     public void updateModel(){
@@ -228,13 +312,16 @@ public class Parser {
         verbPhrases = processor.getVerbPhrases();
         allPhrases = processor.getAllPhrases();
         corefs = processor.getCorefs();
+        corefIndex = processor.getCorefIndex();
         nouns = processor.getNouns();
         verbs = processor.getVerbs();
+        nounPhrasesByContent = processor.getNounPhrasesByContent();
         docs = processor.getDocs();
+        conceptDictionary = processor.getConceptDictionary();
     }
 
     public void saveDataToFiles(String documentSetName){
-        String statFolderName = "stats";
+        String statFolderName = STAT_FOLDER_NAME;
         File statFolder = new File(statFolderName);
         if (!statFolder.exists()){
             statFolder.mkdir();
@@ -245,6 +332,42 @@ public class Parser {
         exporter.saveCoreferencesToFile(corefs);
         exporter.saveIndicatorMatrixToFile(indicatorMatrix);
         exporter.saveParagraphsToFile(docs);
+
+        File modelFile = new File(statFolderName + "/" + documentSetName + "/" + MODEL_FILE_NAME);
+        try {
+            ModelStore.write(modelFile, conceptDictionary, allPhrases, indicatorMatrix, corefs, docs);
+        }catch (IOException e){
+            System.out.println("Cannot write " + modelFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the model from the XML and text exports of {@link #saveDataToFiles(String)}. Slower to read than
+     * {@link #loadModel(File)}, but works with sets exported before the binary snapshot existed.
+     */
+    public void loadDataFromFiles(String documentSetName) throws IOException{
+        ModelImporter importer = new ModelImporter(STAT_FOLDER_NAME, documentSetName);
+        ConceptDictionary dictionary = new ConceptDictionary();
+
+        List<Phrase> phrases = importer.loadPhrasesFromFile(dictionary);
+        importer.loadIndicatorMatrixFromFile(indicatorMatrix);
+        HashMap<String, HashSet<String>> importedCorefs = importer.loadCoreferencesFromFile();
+        List<InputDocument> importedDocs = importer.loadParagraphsFromFile(dictionary);
+
+        processor.restore(dictionary, phrases, importedCorefs, importedDocs);
+        updateModel();
+        log("Loaded " + allPhrases.size() + " phrases and " + docs.size() + " docs from " + STAT_FOLDER_NAME + "/" + documentSetName);
+    }
+
+    /**
+     * Restores the phrases, indicator matrix, corefs and paragraphs written by {@link #saveDataToFiles(String)},
+     * so the set can be scored and solved again without annotating it.
+     */
+    public void loadModel(File modelFile) throws IOException{
+        ModelStore store = ModelStore.read(modelFile, indicatorMatrix);
+        processor.restore(store.getConceptDictionary(), store.getPhrases(), store.getCorefs(), store.getDocs());
+        updateModel();
+        log("Loaded " + allPhrases.size() + " phrases and " + docs.size() + " docs from " + modelFile);
     }
 
     public String generateSummary(){
@@ -257,124 +380,194 @@ public class Parser {
         return findOptimalSolution();
     }
 
-    private void buildCompatibilityMatrix() {
+    /**
+     * A noun p and a verb q are compatible when q is indicated by p, by an alternative NP of p, or when an
+     * alternative VP of q is indicated by p. Instead of testing every NP x VP cell against every other phrase,
+     * each noun's compatible verbs are collected as a union over its neighbour rows. The verbs indicated by the
+     * noun phrases of a coreference cluster are united once per cluster and shared by all its members. This
+     * relies on alternativeVPs being symmetric, so the row of a verb is also the set of verbs it is an
+     * alternative of.
+     */
+    private void buildCompatibilityMatrix() throws Exception {
         int npLength = this.nounPhrases.size();
         int vpLength = this.verbPhrases.size();
 
+        HashMap<Integer, Integer> nounIndex = new HashMap<>();
         for (int p = 0; p < npLength; p++) {
-            for (int q = 0; q < vpLength; q++) {
-                Phrase noun = nounPhrases.get(p);
-                Phrase verb = verbPhrases.get(q);
+            nounIndex.put(nounPhrases.get(p).getId(), p);
+        }
 
-                int related = 0;
+        HashMap<Integer, Integer> verbIndex = new HashMap<>();
+        for (int q = 0; q < vpLength; q++) {
+            verbIndex.put(verbPhrases.get(q).getId(), q);
+        }
 
-                for (int i = 0; i < npLength; i++) {
-                    Phrase otherNoun = nounPhrases.get(i);
+        BitSet[] clusterVerbs = new BitSet[alternativeNPs.size()];
+        BitSet[] compatibleVerbs = new BitSet[npLength];
+        ForkJoinPool pool = new ForkJoinPool(getWorkerCount());
+        try {
+            pool.submit(() -> IntStream.range(0, clusterVerbs.length).parallel().forEach(c ->
+                    clusterVerbs[c] = findClusterVerbs(alternativeNPs.get(c), nounIndex, verbIndex)
+            )).get();
+            pool.submit(() -> IntStream.range(0, npLength).parallel().forEach(p ->
+                    compatibleVerbs[p] = findCompatibleVerbs(nounPhrases.get(p), clusterVerbs, verbIndex)
+            )).get();
+        } finally {
+            pool.shutdown();
+        }
 
-                    if (alternativeNPs.exists(noun, otherNoun) && indicatorMatrix.exists(otherNoun, verb)) {
-                        related = 1;
-                        break;
-                    }
-                }
+        // written sequentially in verb order so every row matches the old NP x VP scan
+        for (int p = 0; p < npLength; p++) {
+            Phrase noun = nounPhrases.get(p);
+            BitSet related = compatibleVerbs[p];
 
-                if (related == 0){
-                    for (int i=0; i<vpLength; i++){
-                        Phrase otherVerb = verbPhrases.get(i);
+            for (int q = related.nextSetBit(0); q >= 0; q = related.nextSetBit(q + 1)) {
+                compatibilityMatrix.setValue(noun, verbPhrases.get(q), 1);
+            }
+        }
+    }
 
-                        if (alternativeVPs.exists(verb, otherVerb) && indicatorMatrix.exists(noun, otherVerb)){
-                            related = 1;
-                            break;
-                        }
-                    }
-                }
+    /**
+     * Verbs indicated by any noun phrase of the cluster, or null when it has fewer than two, as a lone phrase
+     * has no alternatives.
+     */
+    private BitSet findClusterVerbs(List<Phrase> members, Map<Integer, Integer> nounIndex, Map<Integer, Integer> verbIndex) {
+        if (members.size() < 2) {
+            return null;
+        }
 
-                if (related == 0 && indicatorMatrix.exists(noun, verb)){
-                    related = 1;
-                }
-                compatibilityMatrix.setValue(this.nounPhrases.get(p), this.verbPhrases.get(q), related);
+        BitSet related = new BitSet(verbIndex.size());
+        for (Phrase member : members) {
+            if (nounIndex.containsKey(member.getId())) {
+                markVerbs(related, indicatorMatrix.getRow(member, false), verbIndex);
             }
         }
+
+        return related;
     }
 
-    private String startOptimization() throws GRBException{
-        log("Start building optimization model");
-        GRBEnv env = new GRBEnv("mip.log");
-        GRBModel model = new GRBModel(env);
+    private BitSet findCompatibleVerbs(Phrase noun, BitSet[] clusterVerbs, Map<Integer, Integer> verbIndex) {
+        BitSet related = new BitSet(verbIndex.size());
 
-        //Note: more threads mean you need more memory
-        model.getEnv().set(GRB.IntParam.Threads, threads);
+        int[] indicatedVerbs = indicatorMatrix.getRow(noun, false);
+        markVerbs(related, indicatedVerbs, verbIndex);
 
-        //model.getEnv().set(GRB.IntParam.OutputFlag, 0);
+        for (int cluster : corefIndex.getClusters(noun.getContent())) {
+            if (clusterVerbs[cluster] != null) {
+                related.or(clusterVerbs[cluster]);
+            }
+        }
+
+        for (int otherVerb : indicatedVerbs) {
+            if (verbIndex.containsKey(otherVerb)) {
+                markVerbs(related, alternativeVPs.getRow(false, otherVerb, false), verbIndex);
+            }
+        }
 
-        GRBLinExpr expr = new GRBLinExpr();
+        return related;
+    }
+
+    private void markVerbs(BitSet related, int[] verbIds, Map<Integer, Integer> verbIndex) {
+        for (int verbId : verbIds) {
+            Integer q = verbIndex.get(verbId);
+            if (q != null) {
+                related.set(q);
+            }
+        }
+    }
+
+    private int getWorkerCount() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Model building stage: finds alternative phrases, the compatibility matrix and builds the ILP over the
+     * scored phrases. The returned model is handed to {@link #solveModel(OptimizationModel)}.
+     */
+    public OptimizationModel buildModel() throws Exception {
+        findCandidates();
+
+        modelNouns = nounPhrases;
+        modelVerbs = verbPhrases;
+        if (presolve){
+            Presolver presolver = new Presolver(compatibilityMatrix, max_word_length, MIN_SENTENCE_LENGTH, MINIMUM_VERB_LENGTH);
+            presolver.setTopK(topK);
+            presolver.run(nounPhrases, verbPhrases);
+            presolver.printReport();
+
+            modelNouns = presolver.getNouns();
+            modelVerbs = presolver.getVerbs();
+        }
+        // the warm start has to come from the phrases that have variables
+        greedySelection = null;
+
+        log("Start building optimization model with the " + solver + " solver");
+        OptimizationModel model = OptimizationModel.create(solver);
+        try {
+            populateModel(model);
+        }catch (Throwable e){
+            // a half-built model still holds its solver environment
+            model.dispose();
+            throw e;
+        }
+
+        return model;
+    }
+
+    private void populateModel(OptimizationModel model) throws Exception {
+        //Note: more threads mean you need more memory
+        model.setThreads(threads);
+        model.setTimeLimit(timeLimit);
+        model.setMipGap(mipGap);
+
+        LinearExpression expr = new LinearExpression();
 
         nounVariables = new HashMap<>();
         verbVariables = new HashMap<>();
         gammaVariables = new HashMap<>();
-        nounToNounVariables = new HashMap<>();
-        verbToVerbVariables = new HashMap<>();
+        nounToNounVariables = new LinkedHashMap<>();
+        verbToVerbVariables = new LinkedHashMap<>();
 
         markTime("building model for optimization");
-        for(Phrase noun:nounPhrases){
-            GRBVar var = model.addVar(0.0, 1.0, 1.0, GRB.BINARY, "n:" + noun.getId());
+        for(Phrase noun:modelNouns){
+            Variable var = model.addBinaryVariable("n:" + noun.getId());
             nounVariables.put(noun.getId(), var);
 
             expr.addTerm(noun.getScore(), var);
 
-            for (Phrase verb: verbPhrases){
-                if (compatibilityMatrix.getValue(noun, verb).equals(1)){
+            for (Phrase verb: modelVerbs){
+                if (compatibilityMatrix.getInt(noun, verb) == 1){
                     String key = "gamma:" + buildVariableKey(noun, verb);
-                    GRBVar gamma = model.addVar(0.0, 1.0, 1.0, GRB.BINARY, key);
+                    Variable gamma = model.addBinaryVariable(key);
 
                     gammaVariables.put(key, gamma);
                 }
             }
         }
 
-        for (Phrase verb:verbPhrases){
-            GRBVar var = model.addVar(0.0, 1.0, 1.0, GRB.BINARY, "v:" + verb.getId());
+        for (Phrase verb:modelVerbs){
+            Variable var = model.addBinaryVariable("v:" + verb.getId());
             verbVariables.put(verb.getId(), var);
 
             expr.addTerm(verb.getScore(), var);
         }
 
-        for (int i=0; i<nounPhrases.size()-1; i++){
-            for (int j=i+1; j<nounPhrases.size(); j++){
-                Phrase noun1 = nounPhrases.get(i);
-                Phrase noun2 = nounPhrases.get(j);
-                String key = buildVariableKey(noun1, noun2);
+        long skippedNounPairs = addLinkingVariables(model, expr, modelNouns, "n2n:", nounToNounVariables);
+        long skippedVerbPairs = addLinkingVariables(model, expr, modelVerbs, "v2v:", verbToVerbVariables);
+        log("Linking variables: " + nounToNounVariables.size() + " n2n (" + skippedNounPairs + " skipped), "
+                + verbToVerbVariables.size() + " v2v (" + skippedVerbPairs + " skipped); "
+                + 3 * (skippedNounPairs + skippedVerbPairs) + " co-occurrence constraints skipped");
 
-                GRBVar var = model.addVar(0.0, 1.0, 1.0, GRB.BINARY, "n2n:" + key);
-                nounToNounVariables.put(key, var);
-                Double score = -(noun1.getScore() + noun2.getScore()) * calculateSimilarity(noun1, noun2);
-                expr.addTerm(score, var);
-            }
-        }
-
-        for (int i=0; i<verbPhrases.size()-1; i++){
-            for (int j=i+1; j<verbPhrases.size(); j++){
-                Phrase verb1 = verbPhrases.get(i);
-                Phrase verb2 = verbPhrases.get(j);
-                String key = buildVariableKey(verb1, verb2);
-
-                GRBVar var = model.addVar(0.0, 1.0, 1.0, GRB.BINARY, "v2v:" + key);
-                verbToVerbVariables.put(key, var);
-
-                expr.addTerm(-(verb1.getScore() + verb2.getScore()) * calculateSimilarity(verb1, verb2), var);
-            }
-        }
-
-        model.update();
-        model.setObjective(expr, GRB.MAXIMIZE);
+        model.setObjective(expr);
 
         log("Finish setting objective function. Now adding constraints");
 
         addNPValidityConstraint(model);
         addVPValidityConstraint(model);
-        addNotIWithinIConstraint(model, nounPhrases, nounVariables);
-        addNotIWithinIConstraint(model, verbPhrases, verbVariables);
-        addPhraseCooccurrenceConstraint(model, nounPhrases, nounVariables, nounToNounVariables);
-        addPhraseCooccurrenceConstraint(model, verbPhrases, verbVariables, verbToVerbVariables);
+        addNotIWithinIConstraint(model, modelNouns, nounVariables);
+        addNotIWithinIConstraint(model, modelVerbs, verbVariables);
+        addPhraseCooccurrenceConstraint(model, true, nounVariables, nounToNounVariables);
+        addPhraseCooccurrenceConstraint(model, false, verbVariables, verbToVerbVariables);
         addSentenceNumberConstraint(model, this.max_sentence);
         addShortSentenceAvoidanceConstraint(model, MIN_SENTENCE_LENGTH);
         addPronounAvoidanceConstraint(model);
@@ -382,57 +575,92 @@ public class Parser {
 
         markTime("finish building model for optimization");
 
-        markTime("Start running optimization model");
-        model.optimize();
-        markTime("Finish running optimization model");
-
-        HashMap<Integer, Phrase> selectedNouns = new HashMap<>();
-        HashMap<Integer, Phrase> selectedVerbs = new HashMap<>();
+        if (warmStart){
+            setGreedyStart(model);
+        }
+    }
 
-        for (Phrase phrase: nounPhrases){
-            GRBVar var = nounVariables.get(phrase.getId());
-            double selected = var.get(GRB.DoubleAttr.X);
+    /**
+     * Solving stage: optimizes the model built by {@link #buildModel()} and reads the summary off the solution.
+     * The model is disposed afterwards, also when solving fails.
+     */
+    public String solveModel(OptimizationModel model) throws SolverException{
+        Map<Phrase, List<Phrase>> selectedNP;
+        try {
+            selectedNP = readSolution(model);
+        }finally {
+            model.dispose();
+        }
 
-            if (selected > 0){
-                selectedNouns.put(phrase.getId(), phrase);
-            }
+        if (selectedNP == null){
+            log("The solver found no summary, falling back to the greedy one");
+            return buildSummary(selectGreedily());
         }
 
-        for (Phrase phrase: verbPhrases){
-            GRBVar var = verbVariables.get(phrase.getId());
-            double selected = var.get(GRB.DoubleAttr.X);
+        return buildSummary(selectedNP);
+    }
 
-            if (selected > 0){
-                selectedVerbs.put(phrase.getId(), phrase);
-            }
+    /**
+     * Optimizes the model and returns the chosen noun phrases with their verb phrases, or null when the solver
+     * has no solution.
+     */
+    private Map<Phrase, List<Phrase>> readSolution(OptimizationModel model) throws SolverException{
+        markTime("Start running optimization model");
+        OptimizationModel.Status status = model.optimize();
+        markTime("Finish running optimization model");
+        log("Solver status: " + status + ", variables: " + model.getVariableCount()
+                + ", constraints: " + model.getConstraintCount()
+                + ", objective: " + model.getObjectiveValue()
+                + ", bound: " + model.getObjectiveBound()
+                + ", gap: " + model.getMipGap()
+                + ", runtime: " + model.getRuntime() + "s");
+
+        if (status == OptimizationModel.Status.INFEASIBLE || status == OptimizationModel.Status.NO_SOLUTION){
+            return null;
         }
 
-        HashMap<Integer, List<Phrase>> selectedNP = new HashMap<>();
+        HashMap<Integer, Phrase> nounsById = new HashMap<>();
+        for (Phrase phrase: modelNouns){
+            nounsById.put(phrase.getId(), phrase);
+        }
 
-        Map<Integer, String> summarySentences = new TreeMap<>();
+        HashMap<Integer, Phrase> verbsById = new HashMap<>();
+        for (Phrase phrase: modelVerbs){
+            verbsById.put(phrase.getId(), phrase);
+        }
+
+        Map<Phrase, List<Phrase>> selectedNP = new HashMap<>();
 
         for (String key: gammaVariables.keySet()){
-            GRBVar var = gammaVariables.get(key);
+            Variable var = gammaVariables.get(key);
 
-            double value = var.get(GRB.DoubleAttr.X);
+            double value = model.getValue(var);
             if (value > 0){
                 String[] data = key.split(":");
-                int nounId = Integer.parseInt(data[1]);
-                int verbId = Integer.parseInt(data[2]);
+                Phrase noun = nounsById.get(Integer.parseInt(data[1]));
+                Phrase verb = verbsById.get(Integer.parseInt(data[2]));
 
-                if (!selectedNP.keySet().contains(nounId)){
-                    selectedNP.put(nounId, new ArrayList<Phrase>());
+                if (!selectedNP.containsKey(noun)){
+                    selectedNP.put(noun, new ArrayList<Phrase>());
                 }
 
-                selectedNP.get(nounId).add(selectedVerbs.get(verbId));
+                selectedNP.get(noun).add(verb);
             }
         }
 
-        String summary = "";
+        return selectedNP;
+    }
 
-        for (Integer key: selectedNP.keySet()){
-            Phrase nounPhrase = selectedNouns.get(key);
-            List<Phrase> phrases = selectedNP.get(key);
+    /**
+     * Joins each chosen noun phrase with its verb phrases into a sentence. Sentences are ordered by their
+     * first verb phrase, one per line.
+     */
+    private String buildSummary(Map<Phrase, List<Phrase>> selectedNP){
+        Map<Integer, String> summarySentences = new TreeMap<>();
+
+        for (Map.Entry<Phrase, List<Phrase>> entry: selectedNP.entrySet()){
+            Phrase nounPhrase = entry.getKey();
+            List<Phrase> phrases = new ArrayList<>(entry.getValue());
             String sentence = nounPhrase.getContent() + " ";
             Integer minID = Integer.MAX_VALUE;
 
@@ -453,6 +681,8 @@ public class Parser {
             System.out.println(sentence);
         }
 
+        String summary = "";
+
         for (Map.Entry<Integer, String> entry: summarySentences.entrySet()){
             summary += entry.getValue() + "\n";
         }
@@ -460,238 +690,427 @@ public class Parser {
         return summary;
     }
 
-    private void addNPValidityConstraint(GRBModel model) throws GRBException{
-        GRBLinExpr expr = null;
+    /**
+     * Alternative phrases and the compatibility matrix, which both the ILP and the greedy selection work on.
+     */
+    private void findCandidates() throws Exception {
+        previousMarkedTime = System.currentTimeMillis();
+        markTime("start finding alternative NP and VP");
+        findAlternativeNPs();
+        findAlternativeVPs(verbPhrases);
+        markTime("finish finding alternative NP and VP");
+
+        markTime("building compatibility matrix");
+        buildCompatibilityMatrix();
+        markTime("finish building compatibility matrix");
+    }
+
+    /**
+     * Fast mode: the greedy summary over the scored phrases, without an ILP.
+     */
+    public String summarizeGreedily() throws Exception {
+        findCandidates();
+        markTime("start greedy selection");
+        String summary = buildSummary(selectGreedily());
+        markTime("finish greedy selection");
+
+        return summary;
+    }
+
+    /**
+     * Gives the greedy summary to the solver as its start solution. Linking variables are 1 exactly when both of
+     * their phrases are chosen, as the co-occurrence constraints require, and every other variable starts at 0.
+     */
+    private void setGreedyStart(OptimizationModel model) throws SolverException {
+        LinkedHashMap<Phrase, List<Phrase>> selection = selectGreedily();
+
+        HashSet<Integer> chosenNouns = new HashSet<>();
+        HashSet<Integer> chosenVerbs = new HashSet<>();
+        HashSet<String> chosenGammas = new HashSet<>();
+        for (Map.Entry<Phrase, List<Phrase>> entry: selection.entrySet()){
+            chosenNouns.add(entry.getKey().getId());
+            for (Phrase verb: entry.getValue()){
+                chosenVerbs.add(verb.getId());
+                chosenGammas.add("gamma:" + buildVariableKey(entry.getKey(), verb));
+            }
+        }
+
+        for (Map.Entry<Integer, Variable> entry: nounVariables.entrySet()){
+            model.setStart(entry.getValue(), chosenNouns.contains(entry.getKey()) ? 1 : 0);
+        }
+        for (Map.Entry<Integer, Variable> entry: verbVariables.entrySet()){
+            model.setStart(entry.getValue(), chosenVerbs.contains(entry.getKey()) ? 1 : 0);
+        }
+        for (Map.Entry<String, Variable> entry: gammaVariables.entrySet()){
+            model.setStart(entry.getValue(), chosenGammas.contains(entry.getKey()) ? 1 : 0);
+        }
+        setLinkingStart(model, nounToNounVariables, chosenNouns);
+        setLinkingStart(model, verbToVerbVariables, chosenVerbs);
+
+        log("Warm start: " + selection.size() + " sentences, " + chosenVerbs.size() + " verb phrases");
+    }
+
+    private void setLinkingStart(OptimizationModel model, HashMap<String, Variable> linkingVariables,
+                                 HashSet<Integer> chosen) throws SolverException {
+        for (Map.Entry<String, Variable> entry: linkingVariables.entrySet()){
+            String[] ids = entry.getKey().split(":");
+            boolean both = chosen.contains(Integer.parseInt(ids[0])) && chosen.contains(Integer.parseInt(ids[1]));
+            model.setStart(entry.getValue(), both ? 1 : 0);
+        }
+    }
+
+    /**
+     * Feasible assignment found without the solver, see {@link GreedySelector}. Needs the compatibility matrix;
+     * computed once and reused by the warm start and the fallback.
+     */
+    private LinkedHashMap<Phrase, List<Phrase>> selectGreedily(){
+        if (greedySelection != null){
+            return greedySelection;
+        }
+
+        GreedySelector selector = new GreedySelector(modelNouns != null ? modelNouns : nounPhrases,
+                modelVerbs != null ? modelVerbs : verbPhrases, compatibilityMatrix,
+                (a, b) -> calculateSimilarity(a, b, countSharedConcepts(a, b)));
+        selector.setBudgets(max_sentence, max_word_length, MIN_SENTENCE_LENGTH, MINIMUM_VERB_LENGTH);
+        greedySelection = selector.select();
+
+        return greedySelection;
+    }
+
+    private void addNPValidityConstraint(OptimizationModel model) throws SolverException{
+        LinearExpression expr = null;
 
         // Add NP Validity
-        for (Phrase noun: nounPhrases){
-            GRBVar nounVariable = nounVariables.get(noun.getId());
-            GRBLinExpr nounConstraint = new GRBLinExpr();
+        for (Phrase noun: modelNouns){
+            Variable nounVariable = nounVariables.get(noun.getId());
+            LinearExpression nounConstraint = new LinearExpression();
 
-            for (Phrase verb : verbPhrases){
-                if (compatibilityMatrix.getValue(noun, verb).equals(1)){
+            for (Phrase verb : modelVerbs){
+                if (compatibilityMatrix.getInt(noun, verb) == 1){
                     String key = "gamma:" + buildVariableKey(noun, verb);
-                    GRBVar var = gammaVariables.get(key);
+                    Variable var = gammaVariables.get(key);
 
-                    expr = new GRBLinExpr();
+                    expr = new LinearExpression();
 
                     expr.addTerm(1.0, nounVariable);
                     expr.addTerm(-1.0, var);
 
-                    model.addConstr(expr, GRB.GREATER_EQUAL, 0.0, "np_validity:" + buildVariableKey(noun, verb));
+                    model.addConstraint(expr, OptimizationModel.Sense.GREATER_EQUAL, 0.0, "np_validity:" + buildVariableKey(noun, verb));
 
                     nounConstraint.addTerm(1.0, var);
                 }
             }
 
             nounConstraint.addTerm(-1.0, nounVariable);
-            model.addConstr(nounConstraint, GRB.GREATER_EQUAL, 0.0, "np_validity:" + noun.getId());
+            model.addConstraint(nounConstraint, OptimizationModel.Sense.GREATER_EQUAL, 0.0, "np_validity:" + noun.getId());
         }
     }
 
-    private void addVPValidityConstraint(GRBModel model) throws GRBException{
+    private void addVPValidityConstraint(OptimizationModel model) throws SolverException{
         // Add Verb Legality
-        for (Phrase verb: verbPhrases){
-            GRBVar verbVar = verbVariables.get(verb.getId());
-            GRBLinExpr constr = new GRBLinExpr();
+        for (Phrase verb: modelVerbs){
+            Variable verbVar = verbVariables.get(verb.getId());
+            LinearExpression constr = new LinearExpression();
             constr.addTerm(-1.0, verbVar);
 
-            for (Phrase noun: nounPhrases){
-                if (compatibilityMatrix.getValue(noun, verb).equals(1)){
+            for (Phrase noun: modelNouns){
+                if (compatibilityMatrix.getInt(noun, verb) == 1){
                     String key = "gamma:" + buildVariableKey(noun, verb);
-                    GRBVar var = gammaVariables.get(key);
+                    Variable var = gammaVariables.get(key);
 
                     constr.addTerm(1.0, var);
                 }
             }
 
-            model.addConstr(constr, GRB.EQUAL, 0.0, "vp_legality:" + verb.getId());
+            model.addConstraint(constr, OptimizationModel.Sense.EQUAL, 0.0, "vp_legality:" + verb.getId());
         }
     }
 
-    private void addNotIWithinIConstraint(GRBModel model, List<Phrase> phrases, HashMap<Integer, GRBVar> variables)
-            throws GRBException {
+    private void addNotIWithinIConstraint(OptimizationModel model, List<Phrase> phrases, HashMap<Integer, Variable> variables)
+            throws SolverException {
         // Add Not i-within-i constraint
         for (int i=0; i<phrases.size()-1; i++){
             for (int j=i+1; j<phrases.size(); j++){
                 Phrase phrase1 = phrases.get(i);
                 Phrase phrase2 = phrases.get(j);
                 if (phrase1.getId().equals(phrase2.getParentId())){
-                    GRBVar var1 = variables.get(phrase1.getId());
-                    GRBVar var2 = variables.get(phrase2.getId());
+                    Variable var1 = variables.get(phrase1.getId());
+                    Variable var2 = variables.get(phrase2.getId());
 
-                    GRBLinExpr expr = new GRBLinExpr();
+                    LinearExpression expr = new LinearExpression();
                     expr.addTerm(1.0, var1);
                     expr.addTerm(1.0, var2);
 
-                    model.addConstr(expr, GRB.LESS_EQUAL, 1.0,
+                    model.addConstraint(expr, OptimizationModel.Sense.LESS_EQUAL, 1.0,
                             "i_within_i:" + phrase1.isNP() + ":" + phrase1.getId() + ":" + phrase2.getId());
                 }
             }
         }
     }
 
-    private void addPhraseCooccurrenceConstraint(GRBModel model,
-                                                 List<Phrase> phrases,
-                                                 HashMap<Integer, GRBVar> variables,
-                                                 HashMap<String, GRBVar> linkingVariables) throws GRBException {
-        for (int i=0; i<phrases.size()-1; i++){
+    /**
+     * Creates the n2n/v2v variables. A pair whose objective coefficient is zero gets no variable: its three
+     * co-occurrence constraints can always be met by setting it to a_i AND a_j, which leaves the objective
+     * unchanged. Similarity is only non-zero for pairs sharing a concept or a coreference cluster, so only
+     * those candidates are visited.
+     *
+     * @return the number of pairs that were skipped
+     */
+    private long addLinkingVariables(OptimizationModel model, LinearExpression objective, List<Phrase> phrases,
+                                     String prefix, HashMap<String, Variable> linkingVariables) throws SolverException {
+        int size = phrases.size();
+        ConceptIndex conceptIndex = new ConceptIndex(phrases);
+        BitSet[] corefPartners = findCorefPartners(phrases);
+
+        int[] sharedConcepts = new int[size];
+
+        for (int i=0; i<size-1; i++){
             Phrase phrase_i = phrases.get(i);
-            GRBVar a_i = variables.get(phrase_i.getId());
+            BitSet candidates = new BitSet(size);
+            conceptIndex.visitOverlaps(i, (j, shared) -> {
+                candidates.set(j);
+                sharedConcepts[j] = shared;
+            });
+            if (corefPartners[i] != null){
+                candidates.or(corefPartners[i]);
+            }
 
-            for (int j=i+1; j<phrases.size(); j++){
+            for (int j = candidates.nextSetBit(i + 1); j >= 0; j = candidates.nextSetBit(j + 1)){
                 Phrase phrase_j = phrases.get(j);
+                double similarity = calculateSimilarity(phrase_i, phrase_j, sharedConcepts[j]);
+                sharedConcepts[j] = 0;
 
-                String key = buildVariableKey(phrase_i, phrase_j);
+                double score = -(phrase_i.getScore() + phrase_j.getScore()) * similarity;
+                if (score == 0){
+                    continue;
+                }
 
-                GRBVar a_j = variables.get(phrase_j.getId());
+                String key = buildVariableKey(phrase_i, phrase_j);
+                Variable var = model.addBinaryVariable(prefix + key);
+                linkingVariables.put(key, var);
+                objective.addTerm(score, var);
+            }
+        }
 
-                GRBVar a_ij = linkingVariables.get(key);
+        return (long) size * (size - 1) / 2 - linkingVariables.size();
+    }
 
-                GRBLinExpr expr = new GRBLinExpr();
-                expr.addTerm(1.0, a_ij);
-                expr.addTerm(-1.0, a_i);
-                model.addConstr(expr, GRB.LESS_EQUAL, 0.0, "phrase_coocurrence_1:" + phrase_i.isNP() + key);
+    /**
+     * For each position, the later positions whose phrase shares a coreference cluster with it, or null.
+     */
+    private BitSet[] findCorefPartners(List<Phrase> phrases){
+        BitSet[] partners = new BitSet[phrases.size()];
+
+        for (List<Integer> positions: groupByCluster(phrases)){
+            for (int a: positions){
+                for (int b: positions){
+                    if (b > a){
+                        if (partners[a] == null){
+                            partners[a] = new BitSet();
+                        }
+                        partners[a].set(b);
+                    }
+                }
+            }
+        }
 
-                expr = new GRBLinExpr();
-                expr.addTerm(1.0, a_ij);
-                expr.addTerm(-1.0, a_j);
-                model.addConstr(expr, GRB.LESS_EQUAL, 0.0, "phrase_coocurrence_2:" + phrase_i.isNP() + key);
+        return partners;
+    }
 
-                expr = new GRBLinExpr();
-                expr.addTerm(1.0, a_i);
-                expr.addTerm(1.0, a_j);
-                expr.addTerm(-1.0, a_ij);
-                model.addConstr(expr, GRB.LESS_EQUAL, 1.0, "phrase_coocurrence_3:" + phrase_i.isNP() + key);
+    /**
+     * Positions of the phrases in each coreference cluster, skipping clusters none of the phrases belong to.
+     */
+    private List<List<Integer>> groupByCluster(List<Phrase> phrases){
+        HashMap<Integer, List<Integer>> members = new HashMap<>();
+        List<List<Integer>> groups = new ArrayList<>();
+
+        for (int i = 0; i < phrases.size(); i++){
+            for (int cluster: corefIndex.getClusters(phrases.get(i).getContent())){
+                List<Integer> positions = members.get(cluster);
+                if (positions == null){
+                    positions = new ArrayList<>();
+                    members.put(cluster, positions);
+                    groups.add(positions);
+                }
+                positions.add(i);
             }
         }
+
+        return groups;
+    }
+
+    private void addPhraseCooccurrenceConstraint(OptimizationModel model,
+                                                 boolean isNP,
+                                                 HashMap<Integer, Variable> variables,
+                                                 HashMap<String, Variable> linkingVariables) throws SolverException {
+        for (Map.Entry<String, Variable> entry: linkingVariables.entrySet()){
+            String key = entry.getKey();
+            String[] ids = key.split(":");
+
+            Variable a_i = variables.get(Integer.parseInt(ids[0]));
+            Variable a_j = variables.get(Integer.parseInt(ids[1]));
+            Variable a_ij = entry.getValue();
+
+            LinearExpression expr = new LinearExpression();
+            expr.addTerm(1.0, a_ij);
+            expr.addTerm(-1.0, a_i);
+            model.addConstraint(expr, OptimizationModel.Sense.LESS_EQUAL, 0.0, "phrase_coocurrence_1:" + isNP + key);
+
+            expr = new LinearExpression();
+            expr.addTerm(1.0, a_ij);
+            expr.addTerm(-1.0, a_j);
+            model.addConstraint(expr, OptimizationModel.Sense.LESS_EQUAL, 0.0, "phrase_coocurrence_2:" + isNP + key);
+
+            expr = new LinearExpression();
+            expr.addTerm(1.0, a_i);
+            expr.addTerm(1.0, a_j);
+            expr.addTerm(-1.0, a_ij);
+            model.addConstraint(expr, OptimizationModel.Sense.LESS_EQUAL, 1.0, "phrase_coocurrence_3:" + isNP + key);
+        }
     }
 
-    private void addSentenceNumberConstraint(GRBModel model, int K) throws GRBException{
-        GRBLinExpr expr = new GRBLinExpr();
+    private void addSentenceNumberConstraint(OptimizationModel model, int K) throws SolverException{
+        LinearExpression expr = new LinearExpression();
 
-        for (Phrase phrase: nounPhrases){
-            GRBVar var = nounVariables.get(phrase.getId());
+        for (Phrase phrase: modelNouns){
+            Variable var = nounVariables.get(phrase.getId());
             expr.addTerm(1.0, var);
         }
 
-        model.addConstr(expr, GRB.LESS_EQUAL, K, "sentence_number");
+        model.addConstraint(expr, OptimizationModel.Sense.LESS_EQUAL, K, "sentence_number");
     }
 
-    private void addShortSentenceAvoidanceConstraint(GRBModel model, int M) throws GRBException {
-        for(Phrase phrase: verbPhrases){
+    private void addShortSentenceAvoidanceConstraint(OptimizationModel model, int M) throws SolverException {
+        for(Phrase phrase: modelVerbs){
             if (phrase.getSentenceLength() < M || phrase.getWordLength() < MINIMUM_VERB_LENGTH){
-                GRBVar var = verbVariables.get(phrase.getId());
-                GRBLinExpr expr = new GRBLinExpr();
+                Variable var = verbVariables.get(phrase.getId());
+                LinearExpression expr = new LinearExpression();
                 expr.addTerm(1.0, var);
 
-                model.addConstr(expr, GRB.EQUAL, 0.0, "short_sent_avoidance:" + phrase.getId());
+                model.addConstraint(expr, OptimizationModel.Sense.EQUAL, 0.0, "short_sent_avoidance:" + phrase.getId());
             }
         }
     }
 
-    private void addPronounAvoidanceConstraint(GRBModel model) throws GRBException{
-        for (Phrase phrase: nounPhrases){
+    private void addPronounAvoidanceConstraint(OptimizationModel model) throws SolverException{
+        for (Phrase phrase: modelNouns){
             if (phrase.isPronoun()){
-                GRBVar var = nounVariables.get(phrase.getId());
-                GRBLinExpr expr = new GRBLinExpr();
+                Variable var = nounVariables.get(phrase.getId());
+                LinearExpression expr = new LinearExpression();
                 expr.addTerm(1.0, var);
-                model.addConstr(expr, GRB.EQUAL, 0.0, "pronoun_avoidance:" + phrase.getId());
+                model.addConstraint(expr, OptimizationModel.Sense.EQUAL, 0.0, "pronoun_avoidance:" + phrase.getId());
             }
         }
     }
 
-    private void addLengthConstraint(GRBModel model) throws GRBException{
-        GRBLinExpr expr = new GRBLinExpr();
+    private void addLengthConstraint(OptimizationModel model) throws SolverException{
+        LinearExpression expr = new LinearExpression();
 
-        for (Phrase phrase: nounPhrases){
-            GRBVar var = nounVariables.get(phrase.getId());
+        for (Phrase phrase: modelNouns){
+            Variable var = nounVariables.get(phrase.getId());
             expr.addTerm(phrase.getWordLength(), var);
         }
 
-        for (Phrase phrase: verbPhrases){
-            GRBVar var = verbVariables.get(phrase.getId());
+        for (Phrase phrase: modelVerbs){
+            Variable var = verbVariables.get(phrase.getId());
             expr.addTerm(phrase.getWordLength(), var);
         }
 
-        model.addConstr(expr, GRB.LESS_EQUAL, this.max_word_length, "length_constraint");
+        model.addConstraint(expr, OptimizationModel.Sense.LESS_EQUAL, this.max_word_length, "length_constraint");
     }
 
     private String buildVariableKey(Phrase a, Phrase b){
         return a.getId() + ":" + b.getId();
     }
 
-    private double calculateSimilarity(Phrase a, Phrase b){
-        for(HashSet set:corefs.values()){
-            if (set.contains(a.getContent()) && set.contains(b.getContent())){
-                return 1.0;
-            }
+    private double calculateSimilarity(Phrase a, Phrase b, int sharedConcepts){
+        if (corefIndex.areCoreferent(a.getContent(), b.getContent())){
+            return 1.0;
         }
 
-        return calculateJaccardIndex(a, b);
+        return calculateJaccardIndex(a, b, sharedConcepts);
     }
 
     public void scorePhrases(){
-        int count = 0;
-        for(InputDocument doc: this.docs){
-            log("Scoring phrases againsts the doc_id " + count);
-            PhraseScorer phraseScorer = new PhraseScorer(doc);
-            for (Phrase phrase: allPhrases){
-                double score = phraseScorer.scorePhrase(phrase);
-                phrase.setScore(phrase.getScore() + score);
+        log("Scoring " + allPhrases.size() + " phrases against " + docs.size() + " docs");
+
+        ForkJoinPool pool = new ForkJoinPool(getWorkerCount());
+        try {
+            double[] scores = new ParallelPhraseScorer(docs, pool).score(allPhrases);
+
+            for (int i = 0; i < scores.length; i++){
+                Phrase phrase = allPhrases.get(i);
+                phrase.setScore(phrase.getScore() + scores[i]);
             }
-            count += 1;
+        } finally {
+            pool.shutdown();
         }
     }
 
     public String findOptimalSolution() {
         try {
-            previousMarkedTime = System.currentTimeMillis();
-            markTime("start finding alternative NP and VP");
-            findAlternativeNPs(nounPhrases, corefs.values());
-            findAlternativeVPs(verbPhrases);
-            markTime("finish finding alternative NP and VP");
-
-            markTime("building compatibility matrix");
-            buildCompatibilityMatrix();
-            markTime("finish building compatibility matrix");
-            return startOptimization();
+            if (fastMode){
+                return summarizeGreedily();
+            }
+            return solveModel(buildModel());
         }catch (Exception ex){
             System.out.println("Exception occurred");
             System.out.println(ex.getMessage());
             ex.printStackTrace();
+        }
+
+        try {
+            log("Falling back to the greedy summary");
+            return buildSummary(selectGreedily());
+        }catch (RuntimeException ex){
+            System.out.println("Greedy summary failed: " + ex.getMessage());
             return "";
         }
     }
 
-    private void findAlternativeNPs(List<Phrase> nounPhrases, Collection<HashSet<String>> clusters) {
-        for (HashSet<String> cluster : clusters) {
-            List<Phrase> alternativePhrases = new ArrayList<Phrase>();
-
-            for (String phraseText : cluster) {
-                for (Phrase p : nounPhrases) {
-                    if (p.getContent().equals(phraseText)) {
-                        alternativePhrases.add(p);
-                    }
+    /**
+     * Collects the noun phrases of every coreference cluster; two noun phrases are alternatives when they share
+     * a cluster. Only the membership is kept, linear in the number of phrases, instead of a cell for every pair
+     * of a cluster, which is quadratic in its size. Clusters are resolved to phrases through the content index
+     * built during extraction.
+     */
+    private void findAlternativeNPs() {
+        alternativeNPs = new ArrayList<>();
+        for (int cluster = 0; cluster < corefIndex.getClusterCount(); cluster++) {
+            List<Phrase> alternativePhrases = new ArrayList<>();
+
+            for (String mention : corefIndex.getMentions(cluster)) {
+                List<Phrase> phrases = nounPhrasesByContent.get(mention);
+                if (phrases != null) {
+                    alternativePhrases.addAll(phrases);
                 }
             }
 
-            int len = alternativePhrases.size();
-
-            for (int i = 0; i < len - 1; i++) {
-                for (int j = i + 1; j < len; j++) {
-                    Phrase a = alternativePhrases.get(i);
-                    Phrase b = alternativePhrases.get(j);
-                    alternativeNPs.setValue(a, b, 1);
-                    alternativeNPs.setValue(b, a, 1);
-                }
-            }
+            alternativeNPs.add(alternativePhrases);
         }
     }
 
     private void findAlternativeVPs(List<Phrase> verbPhrases) {
         int len = verbPhrases.size();
 
+        if (this.alternative_vp_threshold > 0) {
+            // a positive threshold needs at least one shared concept, so only overlapping pairs are visited
+            ConceptIndex conceptIndex = new ConceptIndex(verbPhrases);
+            for (int i = 0; i < len - 1; i++) {
+                Phrase a = verbPhrases.get(i);
+                conceptIndex.visitOverlaps(i, (j, shared) -> {
+                    Phrase b = verbPhrases.get(j);
+
+                    double d = calculateJaccardIndex(a, b, shared);
+                    if (d >= this.alternative_vp_threshold){
+                        alternativeVPs.setValue(a, b, d);
+                        alternativeVPs.setValue(b, a, d);
+                    }
+                });
+            }
+            return;
+        }
+
         for (int i = 0; i < len - 1; i++) {
             for (int j = i + 1; j < len; j++) {
                 Phrase a = verbPhrases.get(i);
@@ -707,20 +1126,34 @@ public class Parser {
     }
 
     private double calculateJaccardIndex(Phrase a, Phrase b) {
-        Set<String> conceptsInA = a.getConcepts();
-        Set<String> conceptsInB = b.getConcepts();
+        return calculateJaccardIndex(a, b, countSharedConcepts(a, b));
+    }
 
-        int count = 0;
-        Double finalScore = 0.0d;
+    private int countSharedConcepts(Phrase a, Phrase b) {
+        int[] conceptsInA = a.getConcepts();
+        int[] conceptsInB = b.getConcepts();
 
-        for (String concept : conceptsInA) {
-            if (conceptsInB.contains(concept)) {
+        // both arrays are sorted, so the intersection is a single merge pass
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < conceptsInA.length && j < conceptsInB.length) {
+            if (conceptsInA[i] == conceptsInB[j]) {
                 count++;
+                i++;
+                j++;
+            } else if (conceptsInA[i] < conceptsInB[j]) {
+                i++;
+            } else {
+                j++;
             }
         }
 
-        finalScore = (double) count / (conceptsInA.size() + conceptsInB.size() - count);
-        if (finalScore.isNaN()){
+        return count;
+    }
+
+    private double calculateJaccardIndex(Phrase a, Phrase b, int sharedConcepts) {
+        double finalScore = (double) sharedConcepts / (a.getConcepts().length + b.getConcepts().length - sharedConcepts);
+        if (Double.isNaN(finalScore)){
             return 0.0;
         }
 
@@ -2,63 +2,241 @@ package jaist.summarization;
 
 import jaist.summarization.unit.Phrase;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * Created by chientran on 10/6/15.
+ *
+ * Sparse phrase-by-phrase matrix. Each phrase is encoded as (id << 1 | type) and a cell is addressed by
+ * the two codes packed into one long, stored in an open-addressing table of primitive keys and values.
+ * Every row also keeps the list of its column codes so neighbours can be enumerated without a scan.
  */
 public class PhraseMatrix {
-    private HashMap<String, Object> matrix;
+    private static final long EMPTY = -1L;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_ROW_CAPACITY = 4;
+
+    private long[] keys;
+    private double[] values;
+    private int size;
+
+    private int[][] rows;
+    private int[] rowSizes;
 
     public PhraseMatrix(){
-        matrix = new HashMap<>();
-    }
+        keys = new long[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+        values = new double[INITIAL_CAPACITY];
 
-    public void setValue(Phrase nounPhrase, Phrase verbPhrase, Object value){
-        matrix.put(buildKey(nounPhrase, verbPhrase), value);
-        //matrix.put(buildKey(verbPhrase, nounPhrase), value);
+        rows = new int[INITIAL_CAPACITY][];
+        rowSizes = new int[INITIAL_CAPACITY];
     }
 
-    public Object getValue(String key){
-        return matrix.get(key);
+    public void setValue(Phrase a, Phrase b, double value){
+        setValue(a.isNP(), a.getId(), b.isNP(), b.getId(), value);
     }
 
-    public Object getValue(Phrase a, Phrase b){
-        return matrix.get(buildKey(a, b));
+    public void setValue(boolean rowIsNP, int rowId, boolean columnIsNP, int columnId, double value){
+        put(encode(rowIsNP, rowId), encode(columnIsNP, columnId), value);
+
+        if (size * 2 > keys.length){
+            rehash(keys.length * 2);
+        }
     }
 
     public boolean exists(Phrase a, Phrase b){
-        return matrix.get(buildKey(a, b)) != null;
+        return exists(a.isNP(), a.getId(), b.isNP(), b.getId());
+    }
+
+    public boolean exists(boolean rowIsNP, int rowId, boolean columnIsNP, int columnId){
+        long key = pack(encode(rowIsNP, rowId), encode(columnIsNP, columnId));
+        return keys[findSlot(key)] == key;
+    }
+
+    /**
+     * @return the stored value, or 0 when the cell was never set
+     */
+    public double getDouble(Phrase a, Phrase b){
+        return getDouble(pack(encode(a.isNP(), a.getId()), encode(b.isNP(), b.getId())));
+    }
+
+    public int getInt(Phrase a, Phrase b){
+        return (int) getDouble(a, b);
+    }
+
+    public double getDouble(String key){
+        String[] parts = key.split(":");
+        return getDouble(pack(decode(parts[0]), decode(parts[1])));
+    }
+
+    public int getInt(String key){
+        return (int) getDouble(key);
     }
 
-    private String buildKey(Phrase a, Phrase b){
-        String key = "";
-        if (a.isNP()){
-            key += "NP_";
-        }else{
-            key += "VP_";
+    /**
+     * Ids of the phrases of the given type that have a cell in the row of {@code a}, in insertion order.
+     */
+    public int[] getRow(Phrase a, boolean columnIsNP){
+        return getRow(a.isNP(), a.getId(), columnIsNP);
+    }
+
+    public int[] getRow(boolean rowIsNP, int rowId, boolean columnIsNP){
+        int row = encode(rowIsNP, rowId);
+        if (row >= rows.length || rows[row] == null){
+            return new int[0];
         }
 
-        key += a.getId() + ":";
-        if (b.isNP()){
-            key += "NP_";
-        }else{
-            key += "VP_";
+        int[] columns = rows[row];
+        int length = rowSizes[row];
+        int[] ids = new int[length];
+        int count = 0;
+        int type = columnIsNP ? 0 : 1;
+
+        for (int i = 0; i < length; i++){
+            if ((columns[i] & 1) == type){
+                ids[count++] = columns[i] >>> 1;
+            }
         }
 
-        key += b.getId();
+        return count == length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public interface CellVisitor {
+        void visit(boolean rowIsNP, int rowId, boolean columnIsNP, int columnId, double value);
+    }
 
-        return key;
+    /**
+     * Visits every stored cell, in no particular order.
+     */
+    public void forEachCell(CellVisitor visitor){
+        for (int slot = 0; slot < keys.length; slot++){
+            long key = keys[slot];
+            if (key != EMPTY){
+                int row = (int) (key >>> 32);
+                int column = (int) key;
+                visitor.visit((row & 1) == 0, row >>> 1, (column & 1) == 0, column >>> 1, values[slot]);
+            }
+        }
     }
 
     public void printOut(){
-        for(String key: matrix.keySet()){
-            System.out.println(key + " -> " + matrix.get(key));
+        for(String key: keySet()){
+            System.out.println(key + " -> " + getDouble(key));
         }
     }
 
+    /**
+     * Cells formatted as "NP_12:VP_40", the format used by the exported statistics files.
+     */
     public Set<String> keySet(){
-        return matrix.keySet();
+        Set<String> keySet = new LinkedHashSet<>();
+        for (long key: keys){
+            if (key != EMPTY){
+                keySet.add(format((int) (key >>> 32)) + ":" + format((int) key));
+            }
+        }
+
+        return keySet;
+    }
+
+    private double getDouble(long key){
+        int slot = findSlot(key);
+        return keys[slot] == key ? values[slot] : 0;
+    }
+
+    /**
+     * Stores the cell without growing the table; callers keep the load factor below one half.
+     */
+    private void put(int row, int column, double value){
+        long key = pack(row, column);
+
+        int slot = findSlot(key);
+        if (keys[slot] == key){
+            values[slot] = value;
+            return;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        appendToRow(row, column);
+    }
+
+    private int findSlot(long key){
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+
+        while (keys[slot] != EMPTY && keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void rehash(int capacity){
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++){
+            if (oldKeys[i] != EMPTY){
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void growRows(int row){
+        if (row >= rows.length){
+            int capacity = Math.max(rows.length * 2, row + 1);
+            rows = Arrays.copyOf(rows, capacity);
+            rowSizes = Arrays.copyOf(rowSizes, capacity);
+        }
+    }
+
+    private void appendToRow(int row, int column){
+        growRows(row);
+
+        int[] columns = rows[row];
+        if (columns == null){
+            columns = new int[INITIAL_ROW_CAPACITY];
+            rows[row] = columns;
+        }else if (rowSizes[row] == columns.length){
+            columns = Arrays.copyOf(columns, columns.length * 2);
+            rows[row] = columns;
+        }
+
+        columns[rowSizes[row]++] = column;
+    }
+
+    private static int hash(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long pack(int row, int column){
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int encode(boolean isNP, int id){
+        return (id << 1) | (isNP ? 0 : 1);
+    }
+
+    private static String format(int code){
+        return ((code & 1) == 0 ? "NP_" : "VP_") + (code >>> 1);
+    }
+
+    private static int decode(String key){
+        return encode(key.startsWith("NP_"), Integer.parseInt(key.substring(3)));
     }
 }
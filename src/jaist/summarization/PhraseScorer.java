@@ -7,20 +7,26 @@ import java.util.*;
 
 /**
  * Created by chientran on 9/29/15.
+ *
+ * Scores phrases against one document. The position-weighted salience of every concept,
+ * sum over paragraphs i of count_i * weight(i), is computed once per document, so scoring a phrase is a sum
+ * of one array lookup per concept.
  */
 public class PhraseScorer {
     InputDocument inputDocument = null;
 
-    Double B = 6.0;
-    Double RHO = 0.5d;
+    static final double B = 6.0;
+    static final double RHO = 0.5d;
 
-    private static final String PARAGRAPH_SPLIT_REGEX = "(?m)(?=^\\s{4})";
+    // indexed by concept id; concepts that never occur in the document are past the end or 0
+    private double[] salience;
 
     public PhraseScorer(InputDocument inputDocument){
         this.inputDocument = inputDocument;
+        buildSalience();
     }
 
-    private Double weightingParagraph(Integer paragraphPosition){
+    private static double weightingParagraph(int paragraphPosition){
         if (paragraphPosition < - Math.log(B) / Math.log(RHO)){
             return Math.pow(RHO, paragraphPosition) * B;
         }else{
@@ -28,16 +34,37 @@ public class PhraseScorer {
         }
     }
 
-    public Double scorePhrase(Phrase phrase){
-        Double score = 0.0d;
-        Set<String> concepts = phrase.getConcepts();
+    private void buildSalience(){
         List<Paragraph> paragraphs = inputDocument.getParagraphs();
-        int paragraphLength = paragraphs.size();
 
-        for(String concept: concepts){
-            for (int i=0; i<paragraphLength; i++){
-                Integer count = paragraphs.get(i).countFrequency(concept);
-                score += count * weightingParagraph(i);
+        int conceptCount = 0;
+        for (Paragraph paragraph: paragraphs){
+            int[] concepts = paragraph.getConcepts();
+            if (concepts.length > 0){
+                conceptCount = Math.max(conceptCount, concepts[concepts.length - 1] + 1);
+            }
+        }
+
+        // weights are 6, 3, 1.5 and 1, so every partial sum is exact and the order of summation
+        // does not change the result compared to scoring paragraph by paragraph
+        salience = new double[conceptCount];
+        for (int i = 0; i < paragraphs.size(); i++){
+            double weight = weightingParagraph(i);
+            int[] concepts = paragraphs.get(i).getConcepts();
+            int[] frequencies = paragraphs.get(i).getFrequencies();
+
+            for (int k = 0; k < concepts.length; k++){
+                salience[concepts[k]] += frequencies[k] * weight;
+            }
+        }
+    }
+
+    public double scorePhrase(Phrase phrase){
+        double score = 0.0d;
+
+        for(int concept: phrase.getConcepts()){
+            if (concept < salience.length){
+                score += salience[concept];
             }
         }
 
@@ -0,0 +1,289 @@
+package jaist.summarization;
+
+import jaist.summarization.unit.Phrase;
+
+import java.util.*;
+
+/**
+ * Drops the phrases the ILP would fix to 0 anyway, before any variable is created for them:
+ * - pronoun noun phrases (pronoun avoidance)
+ * - verb phrases from short sentences or with too few words (short sentence avoidance)
+ * - phrases that alone, or together with the shortest phrase they could be paired with, exceed the word budget
+ * - noun phrases without a compatible verb phrase (NP validity) and verb phrases without a compatible noun
+ *   phrase (VP legality)
+ *
+ * The last two rules feed each other, so they are repeated until nothing changes. Dropping these phrases
+ * does not change the optimum. Optionally only the top K noun phrases by score are kept, and the top K verb
+ * phrases plus the best verb phrase of every kept noun phrase; this shrinks the model further but may lose
+ * the optimum.
+ */
+public class Presolver {
+    private PhraseMatrix compatibilityMatrix;
+    private int maxWords;
+    private int minSentenceLength;
+    private int minVerbLength;
+    private int topK = 0;
+
+    private List<Phrase> nouns;
+    private List<Phrase> verbs;
+
+    private int pronouns;
+    private int shortVerbs;
+    private int tooLong;
+    private int withoutPartner;
+    private int belowTopK;
+    private int rounds;
+    private long gammaVariables;
+    private long eliminatedGammaVariables;
+    private long eliminatedConstraints;
+
+    public Presolver(PhraseMatrix compatibilityMatrix, int maxWords, int minSentenceLength, int minVerbLength){
+        this.compatibilityMatrix = compatibilityMatrix;
+        this.maxWords = maxWords;
+        this.minSentenceLength = minSentenceLength;
+        this.minVerbLength = minVerbLength;
+    }
+
+    /**
+     * @param topK noun phrases and verb phrases kept, highest score first, see the class comment; 0 keeps all
+     */
+    public void setTopK(int topK){ this.topK = topK; }
+
+    public List<Phrase> getNouns(){ return nouns; }
+
+    public List<Phrase> getVerbs(){ return verbs; }
+
+    /**
+     * Keeps the phrases that may still be chosen, in their original order.
+     */
+    public void run(List<Phrase> nounPhrases, List<Phrase> verbPhrases){
+        int nounCount = nounPhrases.size();
+        int verbCount = verbPhrases.size();
+
+        HashMap<Integer, Integer> verbIndex = new HashMap<>();
+        for (int q = 0; q < verbCount; q++){
+            verbIndex.put(verbPhrases.get(q).getId(), q);
+        }
+
+        // compatibility in both directions, as positions in the lists
+        int[][] nounPartners = new int[nounCount][];
+        int[] verbPartnerCounts = new int[verbCount];
+        for (int p = 0; p < nounCount; p++){
+            int[] ids = compatibilityMatrix.getRow(nounPhrases.get(p), false);
+            int[] positions = new int[ids.length];
+            int count = 0;
+            for (int id: ids){
+                Integer q = verbIndex.get(id);
+                if (q != null){
+                    positions[count++] = q;
+                    verbPartnerCounts[q]++;
+                }
+            }
+            nounPartners[p] = Arrays.copyOf(positions, count);
+            gammaVariables += count;
+        }
+
+        int[][] verbPartners = new int[verbCount][];
+        for (int q = 0; q < verbCount; q++){
+            verbPartners[q] = new int[verbPartnerCounts[q]];
+            verbPartnerCounts[q] = 0;
+        }
+        for (int p = 0; p < nounCount; p++){
+            for (int q: nounPartners[p]){
+                verbPartners[q][verbPartnerCounts[q]++] = p;
+            }
+        }
+
+        boolean[] nounAlive = new boolean[nounCount];
+        for (int p = 0; p < nounCount; p++){
+            Phrase noun = nounPhrases.get(p);
+            if (noun.isPronoun()){
+                pronouns++;
+                eliminatedConstraints++;
+            }else if (noun.getWordLength() > maxWords){
+                tooLong++;
+            }else{
+                nounAlive[p] = true;
+            }
+        }
+
+        boolean[] verbAlive = new boolean[verbCount];
+        for (int q = 0; q < verbCount; q++){
+            Phrase verb = verbPhrases.get(q);
+            if (verb.getSentenceLength() < minSentenceLength || verb.getWordLength() < minVerbLength){
+                shortVerbs++;
+                eliminatedConstraints++;
+            }else if (verb.getWordLength() > maxWords){
+                tooLong++;
+            }else{
+                verbAlive[q] = true;
+            }
+        }
+
+        removeUnpairable(nounPhrases, verbPhrases, nounPartners, verbPartners, nounAlive, verbAlive);
+
+        if (topK > 0){
+            belowTopK += keepTop(nounPhrases, nounAlive, topK, new boolean[nounCount]);
+            removeUnpairable(nounPhrases, verbPhrases, nounPartners, verbPartners, nounAlive, verbAlive);
+
+            // each remaining noun keeps its best verb, so cutting the verbs cannot strand it
+            boolean[] pinned = new boolean[verbCount];
+            for (int p = 0; p < nounCount; p++){
+                if (nounAlive[p]){
+                    int best = bestPartner(nounPhrases.get(p), nounPartners[p], verbPhrases, verbAlive);
+                    if (best >= 0){
+                        pinned[best] = true;
+                    }
+                }
+            }
+            belowTopK += keepTop(verbPhrases, verbAlive, topK, pinned);
+            removeUnpairable(nounPhrases, verbPhrases, nounPartners, verbPartners, nounAlive, verbAlive);
+        }
+
+        nouns = collect(nounPhrases, nounAlive);
+        verbs = collect(verbPhrases, verbAlive);
+
+        // every gamma with a dropped end goes, along with its np_validity row
+        for (int p = 0; p < nounCount; p++){
+            for (int q: nounPartners[p]){
+                if (!nounAlive[p] || !verbAlive[q]){
+                    eliminatedGammaVariables++;
+                }
+            }
+        }
+        eliminatedConstraints += eliminatedGammaVariables;
+        // np_validity per noun, vp_legality per verb and the i-within-i pairs touching a dropped phrase
+        eliminatedConstraints += (nounCount - nouns.size()) + (verbCount - verbs.size());
+        eliminatedConstraints += countNestedPairs(nounPhrases, nounAlive) + countNestedPairs(verbPhrases, verbAlive);
+    }
+
+    /**
+     * Drops phrases left without a partner, and phrases whose shortest partner would not fit in the word
+     * budget with them, until no phrase changes.
+     */
+    private void removeUnpairable(List<Phrase> nounPhrases, List<Phrase> verbPhrases, int[][] nounPartners,
+                                  int[][] verbPartners, boolean[] nounAlive, boolean[] verbAlive){
+        boolean changed = true;
+        while (changed){
+            rounds++;
+            changed = false;
+
+            for (int p = 0; p < nounAlive.length; p++){
+                if (nounAlive[p] && !fits(nounPhrases.get(p), nounPartners[p], verbPhrases, verbAlive)){
+                    nounAlive[p] = false;
+                    changed = true;
+                }
+            }
+
+            for (int q = 0; q < verbAlive.length; q++){
+                if (verbAlive[q] && !fits(verbPhrases.get(q), verbPartners[q], nounPhrases, nounAlive)){
+                    verbAlive[q] = false;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean fits(Phrase phrase, int[] partners, List<Phrase> partnerPhrases, boolean[] partnerAlive){
+        int shortest = Integer.MAX_VALUE;
+        for (int partner: partners){
+            if (partnerAlive[partner]){
+                shortest = Math.min(shortest, partnerPhrases.get(partner).getWordLength());
+            }
+        }
+
+        if (shortest == Integer.MAX_VALUE){
+            withoutPartner++;
+            return false;
+        }
+        if (phrase.getWordLength() + shortest > maxWords){
+            tooLong++;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Keeps the k best scoring phrases still alive, and every pinned one.
+     *
+     * @return the number of phrases dropped
+     */
+    private int keepTop(List<Phrase> phrases, boolean[] alive, int k, boolean[] pinned){
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < alive.length; i++){
+            if (alive[i]){
+                positions.add(i);
+            }
+        }
+        if (positions.size() <= k){
+            return 0;
+        }
+
+        positions.sort((a, b) -> Double.compare(phrases.get(b).getScore(), phrases.get(a).getScore()));
+        int dropped = 0;
+        for (int i = k; i < positions.size(); i++){
+            if (!pinned[positions.get(i)]){
+                alive[positions.get(i)] = false;
+                dropped++;
+            }
+        }
+
+        return dropped;
+    }
+
+    /**
+     * The highest scoring partner still alive that fits in the word budget with the phrase, or -1.
+     */
+    private int bestPartner(Phrase phrase, int[] partners, List<Phrase> partnerPhrases, boolean[] partnerAlive){
+        int best = -1;
+        for (int partner: partners){
+            Phrase candidate = partnerPhrases.get(partner);
+            if (partnerAlive[partner] && phrase.getWordLength() + candidate.getWordLength() <= maxWords
+                    && (best < 0 || candidate.getScore() > partnerPhrases.get(best).getScore())){
+                best = partner;
+            }
+        }
+
+        return best;
+    }
+
+    private long countNestedPairs(List<Phrase> phrases, boolean[] alive){
+        HashMap<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < phrases.size(); i++){
+            positions.put(phrases.get(i).getId(), i);
+        }
+
+        long pairs = 0;
+        for (int i = 0; i < phrases.size(); i++){
+            Integer parent = positions.get(phrases.get(i).getParentId());
+            if (parent != null && parent < i && (!alive[i] || !alive[parent])){
+                pairs++;
+            }
+        }
+
+        return pairs;
+    }
+
+    private List<Phrase> collect(List<Phrase> phrases, boolean[] alive){
+        List<Phrase> kept = new ArrayList<>();
+        for (int i = 0; i < alive.length; i++){
+            if (alive[i]){
+                kept.add(phrases.get(i));
+            }
+        }
+
+        return kept;
+    }
+
+    public void printReport(){
+        System.out.println("Presolve kept " + nouns.size() + " noun and " + verbs.size() + " verb phrases after "
+                + rounds + " rounds: dropped " + pronouns + " pronouns, " + shortVerbs + " short sentence verbs, "
+                + tooLong + " over the word budget, " + withoutPartner + " without a compatible partner"
+                + (topK > 0 ? ", " + belowTopK + " below the top " + topK : ""));
+        System.out.println("Presolve eliminated " + (pronouns + shortVerbs + tooLong + withoutPartner + belowTopK)
+                + " phrase variables, " + eliminatedGammaVariables + " of " + gammaVariables + " gamma variables and "
+                + eliminatedConstraints + " constraints, plus the n2n/v2v variables of the dropped phrases and their"
+                + " co-occurrence constraints");
+    }
+}
@@ -0,0 +1,189 @@
+package jaist.summarization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs items through a chain of stages, each with its own worker threads, connected by bounded queues. While
+ * one item is in a later stage the next ones can already be in earlier stages, and a full queue blocks the
+ * stage feeding it, which bounds how many items are in flight. Every stage records its throughput, busy time
+ * and queue depth.
+ */
+public class StagedPipeline<T> {
+    public interface StageTask<T> {
+        void process(T item) throws Exception;
+    }
+
+    public interface FailureHandler<T> {
+        void failed(T item, String stage, Throwable e);
+    }
+
+    // marks the end of a stage's input; never handed to a task
+    private static final Object END = new Object();
+
+    private int queueCapacity;
+    private List<Stage> stages = new ArrayList<>();
+    private FailureHandler<T> failureHandler;
+
+    /**
+     * @param queueCapacity items that may wait in front of each stage
+     */
+    public StagedPipeline(int queueCapacity, FailureHandler<T> failureHandler){
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.failureHandler = failureHandler;
+    }
+
+    public void addStage(String name, int workers, StageTask<T> task){
+        stages.add(new Stage(name, Math.max(1, workers), task));
+    }
+
+    /**
+     * Feeds the items through every stage and returns once all of them have left the last stage. An item whose
+     * task throws, including Errors such as a missing native library, is reported to the failure handler and
+     * goes no further; the worker carries on, so the stages before it never block on a dead queue.
+     */
+    public void run(List<T> items) throws InterruptedException{
+        if (stages.isEmpty()) return;
+
+        for (int i = 0; i < stages.size(); i++){
+            stages.get(i).start(i + 1 < stages.size() ? stages.get(i + 1) : null);
+        }
+
+        Stage first = stages.get(0);
+        for (T item: items){
+            first.put(item);
+        }
+        first.put(END);
+
+        for (Stage stage: stages){
+            stage.join();
+        }
+    }
+
+    public void printStatistics(){
+        for (Stage stage: stages){
+            stage.printStatistics();
+        }
+    }
+
+    private class Stage {
+        private String name;
+        private int workerCount;
+        private StageTask<T> task;
+        private BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private List<Thread> workers = new ArrayList<>();
+        private Stage next;
+
+        private AtomicInteger liveWorkers = new AtomicInteger();
+        private AtomicLong processed = new AtomicLong();
+        private AtomicLong failed = new AtomicLong();
+        private AtomicLong busyNanos = new AtomicLong();
+        private AtomicInteger maxDepth = new AtomicInteger();
+        private AtomicLong depthSamples = new AtomicLong();
+        private AtomicLong depthTotal = new AtomicLong();
+        private long startedAt;
+        private volatile long finishedAt;
+
+        Stage(String name, int workerCount, StageTask<T> task){
+            this.name = name;
+            this.workerCount = workerCount;
+            this.task = task;
+        }
+
+        void start(Stage next){
+            this.next = next;
+            this.startedAt = System.nanoTime();
+            liveWorkers.set(workerCount);
+
+            for (int i = 0; i < workerCount; i++){
+                Thread worker = new Thread(this::work, "stage-" + name + "-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+
+        void put(Object item) throws InterruptedException{
+            queue.put(item);
+            if (item != END){
+                int depth = queue.size();
+                maxDepth.accumulateAndGet(depth, Math::max);
+                depthSamples.incrementAndGet();
+                depthTotal.addAndGet(depth);
+            }
+        }
+
+        void join() throws InterruptedException{
+            for (Thread worker: workers){
+                worker.join();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void work(){
+            try {
+                while (true){
+                    Object item = queue.take();
+                    if (item == END){
+                        // leave the marker for the other workers of this stage
+                        queue.put(END);
+                        break;
+                    }
+
+                    long start = System.nanoTime();
+                    boolean succeeded = false;
+                    try {
+                        task.process((T) item);
+                        succeeded = true;
+                    }catch (Throwable e){
+                        failed.incrementAndGet();
+                        try {
+                            failureHandler.failed((T) item, name, e);
+                        }catch (Throwable handlerFailure){
+                            handlerFailure.printStackTrace();
+                        }
+                    }finally {
+                        busyNanos.addAndGet(System.nanoTime() - start);
+                    }
+
+                    if (succeeded){
+                        processed.incrementAndGet();
+                        if (next != null){
+                            next.put(item);
+                        }
+                    }
+                }
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }finally {
+                if (liveWorkers.decrementAndGet() == 0){
+                    finishedAt = System.nanoTime();
+                    if (next != null){
+                        try {
+                            next.put(END);
+                        }catch (InterruptedException e){
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+        }
+
+        void printStatistics(){
+            double elapsed = ((finishedAt > 0 ? finishedAt : System.nanoTime()) - startedAt) / 1e9;
+            long samples = depthSamples.get();
+            System.out.println("Stage " + name + ": workers=" + workerCount
+                    + ", processed=" + processed.get()
+                    + ", failed=" + failed.get()
+                    + ", throughput=" + String.format("%.3f", elapsed > 0 ? processed.get() / elapsed : 0.0) + "/s"
+                    + ", busy=" + busyNanos.get() / 1000000 + "ms"
+                    + ", utilisation=" + String.format("%.1f%%", elapsed > 0 ? busyNanos.get() / 1e9 / (elapsed * workerCount) * 100 : 0.0)
+                    + ", queue depth avg=" + String.format("%.2f", samples == 0 ? 0.0 : (double) depthTotal.get() / samples)
+                    + ", max=" + maxDepth.get() + "/" + queueCapacity);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package jaist.summarization.phrase;
 
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.process.DocumentPreprocessor;
@@ -20,15 +22,23 @@ import java.util.*;
 
 public class PhraseExtractor {
     private static String PARSER_MODEL = "edu/stanford/nlp/models/lexparser/englishPCFG.ser.gz";
-    private static Integer sentenceId = 0;
     private InputDocument inputDocument;
     private PhraseMatrix indicatorMatrix;
+    private IdAllocator ids;
     private HashSet<String> namedEntities;
 
 
     public PhraseExtractor(InputDocument inputDocument, PhraseMatrix indicatorMatrix){
+        this(inputDocument, indicatorMatrix, new IdAllocator());
+    }
+
+    /**
+     * @param ids the run's allocator; every extractor of a run must share it so phrase ids stay unique
+     */
+    public PhraseExtractor(InputDocument inputDocument, PhraseMatrix indicatorMatrix, IdAllocator ids){
         this.inputDocument = inputDocument;
         this.indicatorMatrix = indicatorMatrix;
+        this.ids = ids;
     }
 
     public List<Phrase> extractAllPhrases() {
@@ -66,7 +76,7 @@ public class PhraseExtractor {
             Tree tree = lexicalizedParser.parse(sentence);
             // ignore the root node
             tree = tree.children()[0];
-            allPhrases.addAll(extractSentenceNode(tree, sentence.size()));
+            allPhrases.addAll(extractSentenceNode(tree, null, sentence.size()));
         }
 
         return allPhrases;
@@ -83,9 +93,7 @@ public class PhraseExtractor {
     }
 
     private Integer getSentenceID() {
-        sentenceId += 1;
-
-        return sentenceId;
+        return ids.nextSentenceId();
     }
 
     private List<Phrase> extractPhrasesFromSentence(CoreMap sentence){
@@ -97,12 +105,12 @@ public class PhraseExtractor {
 
         // ignore the root node
         tree = tree.children()[0];
-        phrases.addAll(extractSentenceNode(tree, sentenceLength));
+        phrases.addAll(extractSentenceNode(tree, sentence, sentenceLength));
 
         return phrases;
     }
 
-    private List<Phrase> extractSentenceNode(Tree rootNode, Integer sentenceLength){
+    private List<Phrase> extractSentenceNode(Tree rootNode, CoreMap sentence, Integer sentenceLength){
         List<Phrase> phrases = new ArrayList<Phrase>();
 
         int s_length = 0;
@@ -117,6 +125,7 @@ public class PhraseExtractor {
                 String phraseContent = getPhrase(child);
 
                 Phrase phrase = buildPhrase(phraseContent, isNP, -1, 0);
+                attachTokens(phrase, child, sentence);
                 phrase.setSentenceLength(sentenceLength);
 
                 if (nodeValue.equals("NP") || nodeValue.equals("VP")){
@@ -162,6 +171,7 @@ public class PhraseExtractor {
 
                     if ((isNP && subchildValue.equals("NP")) || (!isNP && subchildValue.equals("VP"))){
                         Phrase subPhrase = buildPhrase(getPhrase(subChild), isNP, phrase.getId(), sentenceNodeID);
+                        attachTokens(subPhrase, subChild, sentence);
                         subPhrase.setSentenceLength(sentenceLength);
                         phrases.add(subPhrase);
                     }
@@ -176,14 +186,34 @@ public class PhraseExtractor {
     }
 
     private Phrase buildPhrase(String content, boolean isNP, int parentID, int sentenceNodeID){
-        Set<String> concepts = inputDocument.extractConceptsFromString(content).keySet();
+        int[] concepts = inputDocument.extractConceptIds(content);
 
-        Phrase p = new Phrase(content, isNP, parentID, sentenceNodeID);
+        Phrase p = new Phrase(ids.nextPhraseId(isNP), content, isNP, parentID, sentenceNodeID);
         p.setConcepts(concepts);
+        p.setConceptDictionary(inputDocument.getConceptDictionary());
 
         return p;
     }
 
+    /**
+     * Hands the phrase the sentence tokens under its node, so concepts it has to regenerate come from the
+     * existing annotation rather than a new pipeline run.
+     */
+    private void attachTokens(Phrase phrase, Tree node, CoreMap sentence){
+        if (sentence == null) return;
+
+        List<Tree> leaves = node.getLeaves();
+        if (leaves.isEmpty() || !(leaves.get(0).label() instanceof CoreLabel)) return;
+
+        // leaf labels carry the 1-based index of their token in the sentence
+        int begin = ((CoreLabel) leaves.get(0).label()).index();
+        int end = ((CoreLabel) leaves.get(leaves.size() - 1).label()).index();
+        List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+        if (begin < 1 || end > tokens.size()) return;
+
+        phrase.setTokens(tokens.subList(begin - 1, end), sentence.get(CoreAnnotations.MentionsAnnotation.class));
+    }
+
     public static void main(String[] args) throws Exception {
         String parserModel = "edu/stanford/nlp/models/lexparser/englishPCFG.ser.gz";
         LexicalizedParser lp = LexicalizedParser.loadModel(parserModel);
@@ -199,6 +229,7 @@ public class PhraseExtractor {
         String text = "And the better shape Clinton is in as his term ends, the better chance Gore, his sidekick for six years now, stands in the presidential nomination process and, ultimately, the election.";
 
         InputDocument doc = new InputDocument(text);
+        doc.internConcepts(new ConceptDictionary());
 
         PhraseMatrix indicatorMatrix = new PhraseMatrix();
         List<Phrase> phrases = new PhraseExtractor(doc, indicatorMatrix).extractAllPhrases();
@@ -0,0 +1,459 @@
+package jaist.summarization.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pure-Java depth-first branch and bound for 0-1 programs. Every constraint is normalised to
+ * sum(a_j * x_j) <= b and the search keeps, per row, the smallest activity still reachable under the current
+ * fixings. Fixing a variable updates those activities and propagates forced values (a variable that would
+ * overflow a row is fixed to 0, one whose absence would overflow it is fixed to 1). The bound of a node is
+ * the fixed objective plus every positive coefficient still free.
+ *
+ * Variables are branched in decreasing objective order, trying the value that helps the objective first,
+ * so the first dive behaves like a greedy heuristic and later backtracking improves on it until the search
+ * is exhausted or the time limit expires. A feasible start solution given through setStart is the first
+ * incumbent, so nodes that cannot beat it are pruned from the beginning. The search runs on the calling
+ * thread and ignores the thread count.
+ */
+public class BranchAndBoundModel extends OptimizationModel {
+    private static final double DEFAULT_TIME_LIMIT = 60.0;
+    private static final double EPSILON = 1e-9;
+    private static final int FREE = -1;
+
+    private List<int[]> rowVariables = new ArrayList<>();
+    private List<double[]> rowCoefficients = new ArrayList<>();
+    private List<Double> rowBounds = new ArrayList<>();
+    private int constraintCount = 0;
+    private double[] objective = new double[0];
+    private int[] start = null;
+    private boolean startUsed = false;
+
+    // search state
+    private int[] value;
+    private double[] minActivity;
+    private double[] maxCoefficient;
+    private double[] rhs;
+    private int[][] columnRows;
+    private double[][] columnCoefficients;
+    private int[] trail;
+    private int trailSize;
+    private int[] queue;
+    private int queueSize;
+    private boolean[] queued;
+    private double fixedObjective;
+    private double freePositiveObjective;
+
+    private int[] bestSolution = null;
+    private double bestObjective = Double.NaN;
+    private double bestBound = Double.NaN;
+    private double runtime = 0;
+    private long nodes = 0;
+
+    protected void createVariable(Variable variable){
+    }
+
+    public void setStart(Variable variable, double value){
+        if (start == null || start.length < variables.size()){
+            start = start == null ? new int[variables.size()] : Arrays.copyOf(start, variables.size());
+        }
+        start[variable.getIndex()] = value > 0.5 ? 1 : 0;
+    }
+
+    public void addConstraint(LinearExpression expr, Sense sense, double rhs, String name){
+        if (sense != Sense.GREATER_EQUAL){
+            addRow(expr, 1.0, rhs);
+        }
+        if (sense != Sense.LESS_EQUAL){
+            addRow(expr, -1.0, -rhs);
+        }
+        constraintCount++;
+    }
+
+    public int getConstraintCount(){ return constraintCount; }
+
+    public void setObjective(LinearExpression expr){
+        objective = new double[variables.size()];
+        for (int i = 0; i < expr.size(); i++){
+            objective[expr.getVariable(i)] += expr.getCoefficient(i);
+        }
+    }
+
+    public Status optimize(){
+        long start = System.nanoTime();
+        double limit = timeLimit > 0 ? timeLimit : DEFAULT_TIME_LIMIT;
+        long deadline = start + (long) (limit * 1e9);
+
+        initialiseSearch();
+        useStart();
+        Status status = search(deadline);
+        runtime = (System.nanoTime() - start) / 1e9;
+
+        return status;
+    }
+
+    /**
+     * Whether the last optimize() took the start solution as its first incumbent; a start that violates a row
+     * is ignored.
+     */
+    public boolean isStartUsed(){ return startUsed; }
+
+    /**
+     * Takes the start solution as the first incumbent when it satisfies every row, so the search only explores
+     * nodes that can beat it.
+     */
+    private void useStart(){
+        startUsed = false;
+        if (start == null){
+            return;
+        }
+
+        int[] solution = Arrays.copyOf(start, variables.size());
+        for (int r = 0; r < rhs.length; r++){
+            int[] vars = rowVariables.get(r);
+            double[] coefs = rowCoefficients.get(r);
+
+            double activity = 0;
+            for (int k = 0; k < vars.length; k++){
+                activity += coefs[k] * solution[vars[k]];
+            }
+            if (activity > rhs[r] + EPSILON){
+                return;
+            }
+        }
+
+        startUsed = true;
+        bestSolution = solution;
+        bestObjective = evaluate(solution);
+    }
+
+    public double getValue(Variable variable){
+        return bestSolution == null ? 0.0 : bestSolution[variable.getIndex()];
+    }
+
+    public double getObjectiveValue(){ return bestObjective; }
+
+    public double getObjectiveBound(){ return bestBound; }
+
+    public double getRuntime(){ return runtime; }
+
+    public long getNodeCount(){ return nodes; }
+
+    public void dispose(){
+        rowVariables = null;
+        rowCoefficients = null;
+        columnRows = null;
+        columnCoefficients = null;
+    }
+
+    private void addRow(LinearExpression expr, double sign, double bound){
+        int[] vars = new int[expr.size()];
+        double[] coefs = new double[expr.size()];
+        for (int i = 0; i < expr.size(); i++){
+            vars[i] = expr.getVariable(i);
+            coefs[i] = sign * expr.getCoefficient(i);
+        }
+
+        rowVariables.add(vars);
+        rowCoefficients.add(coefs);
+        rowBounds.add(bound);
+    }
+
+    private void initialiseSearch(){
+        int n = variables.size();
+        int m = rowVariables.size();
+        if (objective.length < n){
+            objective = Arrays.copyOf(objective, n);
+        }
+
+        int[] columnSizes = new int[n];
+        for (int[] vars: rowVariables){
+            for (int var: vars){
+                columnSizes[var]++;
+            }
+        }
+
+        columnRows = new int[n][];
+        columnCoefficients = new double[n][];
+        for (int j = 0; j < n; j++){
+            columnRows[j] = new int[columnSizes[j]];
+            columnCoefficients[j] = new double[columnSizes[j]];
+            columnSizes[j] = 0;
+        }
+
+        rhs = new double[m];
+        minActivity = new double[m];
+        maxCoefficient = new double[m];
+        for (int r = 0; r < m; r++){
+            int[] vars = rowVariables.get(r);
+            double[] coefs = rowCoefficients.get(r);
+            rhs[r] = rowBounds.get(r);
+
+            for (int k = 0; k < vars.length; k++){
+                int j = vars[k];
+                columnRows[j][columnSizes[j]] = r;
+                columnCoefficients[j][columnSizes[j]] = coefs[k];
+                columnSizes[j]++;
+
+                minActivity[r] += Math.min(coefs[k], 0);
+                maxCoefficient[r] = Math.max(maxCoefficient[r], Math.abs(coefs[k]));
+            }
+        }
+
+        value = new int[n];
+        Arrays.fill(value, FREE);
+        trail = new int[n];
+        trailSize = 0;
+        queue = new int[m];
+        queueSize = 0;
+        queued = new boolean[m];
+
+        fixedObjective = 0;
+        freePositiveObjective = 0;
+        for (int j = 0; j < n; j++){
+            freePositiveObjective += Math.max(objective[j], 0);
+        }
+
+        bestSolution = null;
+        bestObjective = Double.NaN;
+        nodes = 0;
+    }
+
+    private Status search(long deadline){
+        int n = variables.size();
+
+        Integer[] boxedOrder = new Integer[n];
+        for (int j = 0; j < n; j++){
+            boxedOrder[j] = j;
+        }
+        Arrays.sort(boxedOrder, (a, b) -> Double.compare(objective[b], objective[a]));
+        int[] order = new int[n];
+        for (int j = 0; j < n; j++){
+            order[j] = boxedOrder[j];
+        }
+
+        // decision stack: variable, position in order, trail mark, node bound and whether both values were tried
+        int[] decisionVariable = new int[n];
+        int[] decisionPosition = new int[n];
+        int[] decisionTrail = new int[n];
+        double[] decisionBound = new double[n];
+        boolean[] decisionExhausted = new boolean[n];
+        int depth = 0;
+
+        if (!propagateAll()){
+            bestBound = Double.NaN;
+            return Status.INFEASIBLE;
+        }
+
+        int position = 0;
+        boolean timedOut = false;
+        boolean backtrack = false;
+
+        while (true){
+            if (!backtrack){
+                nodes++;
+                if ((nodes & 1023) == 0 && System.nanoTime() > deadline){
+                    timedOut = true;
+                    break;
+                }
+
+                double bound = fixedObjective + freePositiveObjective;
+                if (bestSolution != null && bound <= bestObjective + pruningTolerance()){
+                    backtrack = true;
+                    continue;
+                }
+
+                while (position < n && value[order[position]] != FREE){
+                    position++;
+                }
+
+                if (position == n){
+                    // every row's minimum activity equals its activity, so the assignment is feasible
+                    double leafObjective = evaluate(value);
+                    if (bestSolution == null || leafObjective > bestObjective + EPSILON){
+                        bestObjective = leafObjective;
+                        bestSolution = Arrays.copyOf(value, n);
+                    }
+                    backtrack = true;
+                    continue;
+                }
+
+                int var = order[position];
+                decisionVariable[depth] = var;
+                decisionPosition[depth] = position;
+                decisionTrail[depth] = trailSize;
+                decisionBound[depth] = bound;
+                decisionExhausted[depth] = false;
+                depth++;
+
+                if (!fix(var, preferredValue(var)) || !propagate()){
+                    backtrack = true;
+                }
+                continue;
+            }
+
+            // backtrack to the deepest decision whose other value is still untried
+            boolean resumed = false;
+            while (depth > 0){
+                int top = depth - 1;
+                undo(decisionTrail[top]);
+
+                if (decisionExhausted[top]){
+                    depth--;
+                    continue;
+                }
+
+                decisionExhausted[top] = true;
+                if (bestSolution != null && decisionBound[top] <= bestObjective + pruningTolerance()){
+                    depth--;
+                    continue;
+                }
+
+                int var = decisionVariable[top];
+                position = decisionPosition[top];
+                if (fix(var, 1 - preferredValue(var)) && propagate()){
+                    resumed = true;
+                    break;
+                }
+            }
+
+            if (!resumed){
+                break;
+            }
+            backtrack = false;
+        }
+
+        if (!timedOut){
+            // nodes within the gap tolerance of the incumbent were pruned, so the bound is only that tight
+            bestBound = bestSolution == null ? Double.NaN : bestObjective + (mipGap > 0 ? pruningTolerance() : 0);
+            return bestSolution == null ? Status.INFEASIBLE : Status.OPTIMAL;
+        }
+
+        // the search stopped early: open nodes are the current one and every untried alternative on the stack
+        double openBound = fixedObjective + freePositiveObjective;
+        for (int d = 0; d < depth; d++){
+            if (!decisionExhausted[d]){
+                openBound = Math.max(openBound, decisionBound[d]);
+            }
+        }
+        bestBound = bestSolution == null ? openBound : Math.max(bestObjective, openBound);
+
+        return bestSolution == null ? Status.NO_SOLUTION : Status.TIME_LIMIT;
+    }
+
+    private double evaluate(int[] solution){
+        double total = 0;
+        for (int j = 0; j < solution.length; j++){
+            total += objective[j] * solution[j];
+        }
+
+        return total;
+    }
+
+    private double pruningTolerance(){
+        return Math.max(EPSILON, mipGap * Math.abs(bestObjective));
+    }
+
+    private int preferredValue(int var){
+        return objective[var] >= 0 ? 1 : 0;
+    }
+
+    private boolean fix(int var, int val){
+        if (value[var] != FREE){
+            return value[var] == val;
+        }
+
+        value[var] = val;
+        trail[trailSize++] = var;
+
+        double c = objective[var];
+        fixedObjective += c * val;
+        freePositiveObjective -= Math.max(c, 0);
+
+        boolean feasible = true;
+        int[] rows = columnRows[var];
+        double[] coefs = columnCoefficients[var];
+        for (int k = 0; k < rows.length; k++){
+            int r = rows[k];
+            minActivity[r] += coefs[k] * val - Math.min(coefs[k], 0);
+
+            if (minActivity[r] > rhs[r] + EPSILON){
+                feasible = false;
+            }else if (!queued[r] && rhs[r] - minActivity[r] < maxCoefficient[r] - EPSILON){
+                queued[r] = true;
+                queue[queueSize++] = r;
+            }
+        }
+
+        return feasible;
+    }
+
+    private boolean propagate(){
+        boolean feasible = true;
+
+        while (queueSize > 0){
+            int r = queue[--queueSize];
+            queued[r] = false;
+            if (!feasible){
+                continue;
+            }
+
+            double slack = rhs[r] - minActivity[r];
+            int[] vars = rowVariables.get(r);
+            double[] coefs = rowCoefficients.get(r);
+
+            for (int k = 0; k < vars.length && feasible; k++){
+                int j = vars[k];
+                if (value[j] != FREE){
+                    continue;
+                }
+
+                if (coefs[k] > slack + EPSILON){
+                    feasible = fix(j, 0);
+                }else if (-coefs[k] > slack + EPSILON){
+                    feasible = fix(j, 1);
+                }
+                slack = rhs[r] - minActivity[r];
+            }
+        }
+
+        return feasible;
+    }
+
+    private boolean propagateAll(){
+        for (int r = 0; r < rhs.length; r++){
+            if (minActivity[r] > rhs[r] + EPSILON){
+                return false;
+            }
+            if (!queued[r]){
+                queued[r] = true;
+                queue[queueSize++] = r;
+            }
+        }
+
+        return propagate();
+    }
+
+    private void undo(int mark){
+        while (queueSize > 0){
+            queued[queue[--queueSize]] = false;
+        }
+
+        while (trailSize > mark){
+            int var = trail[--trailSize];
+            int val = value[var];
+            value[var] = FREE;
+
+            double c = objective[var];
+            fixedObjective -= c * val;
+            freePositiveObjective += Math.max(c, 0);
+
+            int[] rows = columnRows[var];
+            double[] coefs = columnCoefficients[var];
+            for (int k = 0; k < rows.length; k++){
+                minActivity[rows[k]] -= coefs[k] * val - Math.min(coefs[k], 0);
+            }
+        }
+    }
+}
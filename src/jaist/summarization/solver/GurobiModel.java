@@ -0,0 +1,155 @@
+package jaist.summarization.solver;
+
+import gurobi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gurobi backend. All gurobi.* references live in this class, so the other backends run without the Gurobi
+ * jar, licence or native library.
+ */
+public class GurobiModel extends OptimizationModel {
+    private GRBEnv env;
+    private GRBModel model;
+    private List<GRBVar> grbVariables = new ArrayList<>();
+    private int constraintCount = 0;
+
+    public GurobiModel() throws SolverException{
+        try {
+            // no log file: concurrent solves would all append to the same one; the log still goes to the console
+            env = new GRBEnv();
+            model = new GRBModel(env);
+        }catch (GRBException e){
+            throw new SolverException("Cannot create Gurobi model: " + e.getMessage(), e);
+        }
+    }
+
+    protected void createVariable(Variable variable) throws SolverException{
+        try {
+            grbVariables.add(model.addVar(0.0, 1.0, 0.0, GRB.BINARY, variable.getName()));
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public void setStart(Variable variable, double value) throws SolverException{
+        try {
+            grbVariables.get(variable.getIndex()).set(GRB.DoubleAttr.Start, value);
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public void addConstraint(LinearExpression expr, Sense sense, double rhs, String name) throws SolverException{
+        try {
+            model.addConstr(toGurobi(expr), toGurobi(sense), rhs, name);
+            constraintCount++;
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public int getConstraintCount(){ return constraintCount; }
+
+    public void setObjective(LinearExpression expr) throws SolverException{
+        try {
+            model.update();
+            model.setObjective(toGurobi(expr), GRB.MAXIMIZE);
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public Status optimize() throws SolverException{
+        try {
+            //Note: more threads mean you need more memory
+            model.getEnv().set(GRB.IntParam.Threads, threads);
+            if (timeLimit > 0){
+                model.getEnv().set(GRB.DoubleParam.TimeLimit, timeLimit);
+            }
+            if (mipGap > 0){
+                model.getEnv().set(GRB.DoubleParam.MIPGap, mipGap);
+            }
+
+            model.update();
+            model.optimize();
+
+            int status = model.get(GRB.IntAttr.Status);
+            if (status == GRB.Status.INFEASIBLE || status == GRB.Status.INF_OR_UNBD){
+                return Status.INFEASIBLE;
+            }
+            if (model.get(GRB.IntAttr.SolCount) == 0){
+                return Status.NO_SOLUTION;
+            }
+
+            if (status == GRB.Status.OPTIMAL){
+                return Status.OPTIMAL;
+            }
+            return status == GRB.Status.TIME_LIMIT ? Status.TIME_LIMIT : Status.STOPPED;
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public double getValue(Variable variable) throws SolverException{
+        try {
+            return grbVariables.get(variable.getIndex()).get(GRB.DoubleAttr.X);
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public double getObjectiveValue() throws SolverException{
+        try {
+            if (model.get(GRB.IntAttr.SolCount) == 0){
+                return Double.NaN;
+            }
+            return model.get(GRB.DoubleAttr.ObjVal);
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public double getObjectiveBound() throws SolverException{
+        try {
+            return model.get(GRB.DoubleAttr.ObjBound);
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public double getRuntime() throws SolverException{
+        try {
+            return model.get(GRB.DoubleAttr.Runtime);
+        }catch (GRBException e){
+            throw new SolverException(e.getMessage(), e);
+        }
+    }
+
+    public void dispose(){
+        model.dispose();
+        try {
+            env.dispose();
+        }catch (GRBException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private GRBLinExpr toGurobi(LinearExpression expr){
+        GRBLinExpr grbExpr = new GRBLinExpr();
+        for (int i = 0; i < expr.size(); i++){
+            grbExpr.addTerm(expr.getCoefficient(i), grbVariables.get(expr.getVariable(i)));
+        }
+
+        return grbExpr;
+    }
+
+    private char toGurobi(Sense sense){
+        switch (sense){
+            case LESS_EQUAL: return GRB.LESS_EQUAL;
+            case GREATER_EQUAL: return GRB.GREATER_EQUAL;
+            default: return GRB.EQUAL;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package jaist.summarization.solver;
+
+import java.util.Arrays;
+
+/**
+ * A sum of coefficient * variable terms, kept as parallel primitive arrays.
+ */
+public class LinearExpression {
+    private int[] variables = new int[4];
+    private double[] coefficients = new double[4];
+    private int size = 0;
+
+    public void addTerm(double coefficient, Variable variable){
+        if (size == variables.length){
+            variables = Arrays.copyOf(variables, size * 2);
+            coefficients = Arrays.copyOf(coefficients, size * 2);
+        }
+
+        variables[size] = variable.getIndex();
+        coefficients[size] = coefficient;
+        size++;
+    }
+
+    public int size(){ return size; }
+
+    public int getVariable(int term){ return variables[term]; }
+
+    public double getCoefficient(int term){ return coefficients[term]; }
+}
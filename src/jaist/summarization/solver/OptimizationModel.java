@@ -0,0 +1,125 @@
+package jaist.summarization.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A 0-1 integer linear program that is maximised by one of the solver backends. Parser builds the
+ * summarization model against this class so the same noun/verb/gamma/n2n/v2v formulation can be solved by
+ * Gurobi or by the bundled pure-Java branch and bound.
+ */
+public abstract class OptimizationModel {
+    public static final String GUROBI = "gurobi";
+    public static final String BUILTIN = "builtin";
+
+    public enum Sense { LESS_EQUAL, GREATER_EQUAL, EQUAL }
+
+    public enum Status {
+        /** the returned solution is proven optimal within the configured gap */
+        OPTIMAL,
+        /** the time limit expired; the best solution found so far is returned */
+        TIME_LIMIT,
+        /** the solver stopped early for another reason (node limit, interruption, numerical trouble); the best
+         *  solution found so far is returned */
+        STOPPED,
+        /** the solver stopped before any feasible solution was found */
+        NO_SOLUTION,
+        INFEASIBLE
+    }
+
+    protected List<Variable> variables = new ArrayList<>();
+    protected double timeLimit = 0;
+    protected double mipGap = 0;
+    protected int threads = 0;
+
+    public static OptimizationModel create(String solver) throws SolverException{
+        if (GUROBI.equals(solver)){
+            return new GurobiModel();
+        }else if (BUILTIN.equals(solver)){
+            return new BranchAndBoundModel();
+        }
+
+        throw new SolverException("Unknown solver: " + solver);
+    }
+
+    public Variable addBinaryVariable(String name) throws SolverException{
+        Variable variable = new Variable(variables.size(), name);
+        variables.add(variable);
+        createVariable(variable);
+
+        return variable;
+    }
+
+    public int getVariableCount(){ return variables.size(); }
+
+    /**
+     * @param seconds wall-clock budget for {@link #optimize()}; 0 leaves the backend default
+     */
+    public void setTimeLimit(double seconds){ this.timeLimit = seconds; }
+
+    /**
+     * @param gap relative optimality gap at which the search may stop; 0 leaves the backend default
+     */
+    public void setMipGap(double gap){ this.mipGap = gap; }
+
+    /**
+     * @param threads solver threads; 0 lets the backend decide. The builtin branch and bound is single-threaded
+     *                and ignores it
+     */
+    public void setThreads(int threads){ this.threads = threads; }
+
+    /**
+     * Relative gap between the best bound and the incumbent, or infinity when there is no incumbent.
+     */
+    public double getMipGap() throws SolverException{
+        double objective = getObjectiveValue();
+        double bound = getObjectiveBound();
+        if (Double.isNaN(objective)){
+            return Double.POSITIVE_INFINITY;
+        }
+        if (bound - objective <= 0){
+            return 0.0;
+        }
+
+        return (bound - objective) / Math.max(Math.abs(objective), 1e-10);
+    }
+
+    protected abstract void createVariable(Variable variable) throws SolverException;
+
+    /**
+     * Suggests a value for the variable in a known feasible solution, from which {@link #optimize()} starts.
+     * Variables without a start value are taken as 0.
+     */
+    public abstract void setStart(Variable variable, double value) throws SolverException;
+
+    public abstract void addConstraint(LinearExpression expr, Sense sense, double rhs, String name) throws SolverException;
+
+    public abstract int getConstraintCount();
+
+    /**
+     * Sets the objective to maximise.
+     */
+    public abstract void setObjective(LinearExpression expr) throws SolverException;
+
+    public abstract Status optimize() throws SolverException;
+
+    /**
+     * Value of the variable in the best solution found, only valid when optimize() returned OPTIMAL, TIME_LIMIT
+     * or STOPPED.
+     */
+    public abstract double getValue(Variable variable) throws SolverException;
+
+    /**
+     * Objective of the best solution found, NaN when there is none.
+     */
+    public abstract double getObjectiveValue() throws SolverException;
+
+    /**
+     * Best known upper bound on the optimal objective.
+     */
+    public abstract double getObjectiveBound() throws SolverException;
+
+    public abstract double getRuntime() throws SolverException;
+
+    public abstract void dispose();
+}
@@ -0,0 +1,16 @@
+package jaist.summarization.solver;
+
+/**
+ * Raised when a solver backend fails to build or solve a model.
+ */
+public class SolverException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public SolverException(String message){
+        super(message);
+    }
+
+    public SolverException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
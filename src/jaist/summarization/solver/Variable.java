@@ -0,0 +1,22 @@
+package jaist.summarization.solver;
+
+/**
+ * A binary decision variable of an {@link OptimizationModel}.
+ */
+public class Variable {
+    private final int index;
+    private final String name;
+
+    Variable(int index, String name){
+        this.index = index;
+        this.name = name;
+    }
+
+    public int getIndex(){ return index; }
+
+    public String getName(){ return name; }
+
+    public String toString(){
+        return name;
+    }
+}
@@ -17,22 +17,25 @@ import java.util.*;
  * Created by chientran on 9/29/15.
  */
 public class Paragraph {
-    private Annotation doc = null;
-    private List<CoreLabel> tokens = null;
-    private HashMap<String, Integer> conceptsToFrequency;
+    // concept ids in ascending order, with the frequency of each at the same position
+    private int[] concepts;
+    private int[] frequencies;
 
-    public Paragraph(HashMap<String, Integer> conceptsToFrequency){
-        this.conceptsToFrequency = conceptsToFrequency;
+    public Paragraph(int[] concepts, int[] frequencies){
+        this.concepts = concepts;
+        this.frequencies = frequencies;
     }
 
-    public Set<String> getConcepts(){
-        return conceptsToFrequency.keySet();
+    public int[] getConcepts(){
+        return concepts;
     }
-    public Integer countFrequency(String concept){
-        if (conceptsToFrequency.containsKey(concept)){
-            return conceptsToFrequency.get(concept);
-        }else{
-            return 0;
-        }
+
+    public int[] getFrequencies(){
+        return frequencies;
+    }
+
+    public int countFrequency(int concept){
+        int index = Arrays.binarySearch(concepts, concept);
+        return index >= 0 ? frequencies[index] : 0;
     }
 }
@@ -8,6 +8,7 @@ import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Pair;
 import intoxicant.analytics.coreNlp.StopwordAnnotator;
 import jaist.summarization.AnnotatorHub;
+import jaist.summarization.ConceptDictionary;
 import jaist.summarization.StopwordRemover;
 import jaist.summarization.utils.StringUtils;
 
@@ -26,36 +27,46 @@ public class Phrase{
 
     int sentenceLength = 0;
 
-    private static int _npID = 0;
-    private static int _vpID = 0;
-    private static String[] pronouns = {"it", "i", "you", "he", "they", "we", "she", "who", "them", "me", "him", "one", "her", "us", "something", "nothing", "anything", "himself", "everything", "someone", "themselves", "everyone", "itself", "anyone", "myself"};
+    private static final Set<String> pronouns = new HashSet<>(Arrays.asList("it", "i", "you", "he", "they", "we", "she", "who", "them", "me", "him", "one", "her", "us", "something", "nothing", "anything", "himself", "everything", "someone", "themselves", "everyone", "itself", "anyone", "myself"));
 
-    private Set<String> concepts = null;
+    // derived from content once, see analyseContent()
+    private int wordLength;
+    private boolean pronoun;
 
-    public Phrase(String content, Boolean isNP){
+    // sorted ids into conceptDictionary
+    private int[] concepts = null;
+    private ConceptDictionary conceptDictionary = null;
+
+    // the annotated tokens this phrase spans and the entity mentions of its sentence, when extracted from a parse
+    private List<CoreLabel> tokens = null;
+    private List<CoreMap> sentenceMentions = null;
+
+    /**
+     * @param id the phrase's id among the phrases of its type in this run, see IdAllocator
+     */
+    public Phrase(int id, String content, Boolean isNP){
+        this.id = id;
         this.content = content;
         this.isNP = isNP;
-        if (isNP){
-            id = _npID;
-            _npID += 1;
-        }else{
-            id = _vpID;
-            _vpID += 1;
-        }
+        analyseContent();
     }
 
-    public Phrase(String content, Boolean isNP, Integer parentId){
-        this(content, isNP, parentId, 0);
-    }
-
-    public Phrase(String content, Boolean isNP, Integer parentId, Integer sentenceNodeId){
-        this(content, isNP);
+    public Phrase(int id, String content, Boolean isNP, Integer parentId, Integer sentenceNodeId){
+        this(id, content, isNP);
         this.parentId = parentId;
         this.sentenceNodeId = sentenceNodeId;
     }
 
     public String getContent(){ return this.content; }
-    public void setContent(String content){ this.content = content; }
+    public void setContent(String content){
+        this.content = content;
+        analyseContent();
+    }
+
+    private void analyseContent(){
+        this.wordLength = StringUtils.countWords(content);
+        this.pronoun = isNP && pronouns.contains(content.toLowerCase());
+    }
 
     public Boolean isNP(){
         return this.isNP;
@@ -78,46 +89,73 @@ public class Phrase{
 
     public Integer getId(){ return this.id; }
 
-    public void setConcepts(Set<String> concepts){
+    public void setConcepts(int[] concepts){
         this.concepts = concepts;
     }
 
-    public void generateConcepts(){
-        if (concepts != null) return;
+    public void setConceptDictionary(ConceptDictionary conceptDictionary){
+        this.conceptDictionary = conceptDictionary;
+    }
 
-        Annotation doc = new Annotation(content);
-        AnnotatorHub.getInstance().getPipeline().annotate(doc);
+    /**
+     * Keeps the already-annotated tokens covered by this phrase, so its concepts can be derived from their
+     * lemmas and entity mentions instead of annotating the phrase text again.
+     */
+    public void setTokens(List<CoreLabel> tokens, List<CoreMap> sentenceMentions){
+        this.tokens = tokens;
+        this.sentenceMentions = sentenceMentions;
+    }
 
-        List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
+    public void generateConcepts(){
+        if (concepts != null) return;
+        if (conceptDictionary == null){
+            throw new IllegalStateException("No concept dictionary set for phrase: " + content);
+        }
 
-        tokens = StopwordRemover.removeStopwords(tokens);
+        List<CoreLabel> phraseTokens = tokens;
+        if (phraseTokens == null){
+            // no parse to borrow from: lemmatise the text alone, which never runs the parser or coref
+            Annotation doc = new Annotation(content);
+            AnnotatorHub.getInstance().annotateLight(doc);
+            phraseTokens = doc.get(CoreAnnotations.TokensAnnotation.class);
+        }
 
-        concepts = new HashSet<>();
+        Set<String> conceptStrings = new HashSet<>();
 
         List<String> unigrams = new ArrayList<>();
 
-        for(CoreLabel token: tokens){
+        for(CoreLabel token: StopwordRemover.removeStopwords(phraseTokens)){
             // get lemma tokens which are not stopwords
             String textLemma = token.get(CoreAnnotations.LemmaAnnotation.class);
 
-            concepts.add(textLemma);
+            conceptStrings.add(textLemma);
 
             unigrams.add(textLemma);
         }
 
         for (List<String> bigramToken: CollectionUtils.getNGrams(unigrams, 2, 2)){
-            concepts.add(String.join(" ", bigramToken));
+            conceptStrings.add(String.join(" ", bigramToken));
         }
 
-        // get named entity from phrase
-        AnnotatorHub.getInstance().getEntityMentionsAnnotator().annotate(doc);
+        // get named entities lying inside the phrase
+        if (tokens != null && sentenceMentions != null && !tokens.isEmpty()){
+            int begin = tokens.get(0).index();
+            int end = tokens.get(tokens.size() - 1).index();
 
-        for (CoreMap mention: doc.get(CoreAnnotations.MentionsAnnotation.class)) {
-            String ner = mention.get(CoreAnnotations.TextAnnotation.class);
-            concepts.add(ner);
+            for (CoreMap mention: sentenceMentions) {
+                List<CoreLabel> mentionTokens = mention.get(CoreAnnotations.TokensAnnotation.class);
+                if (mentionTokens.isEmpty()) continue;
+
+                if (mentionTokens.get(0).index() >= begin && mentionTokens.get(mentionTokens.size() - 1).index() <= end){
+                    conceptStrings.add(mention.get(CoreAnnotations.TextAnnotation.class));
+                }
+            }
         }
+
+        concepts = conceptDictionary.internAll(conceptStrings);
     }
-    public Set<String> getConcepts(){
+
+    public int[] getConcepts(){
         if (concepts == null){
             generateConcepts();
         }
@@ -125,17 +163,21 @@ public class Phrase{
         return concepts;
     }
 
+    public List<String> getConceptNames(){
+        return conceptDictionary.getConcepts(getConcepts());
+    }
+
     public Integer getParentId(){ return parentId; }
 
     public Integer getSentenceLength(){ return sentenceLength; }
     public void setSentenceLength(int value){ this.sentenceLength = value; }
 
     public Boolean isPronoun(){
-        return isNP() && Arrays.asList(pronouns).contains(this.content.toLowerCase());
+        return pronoun;
     }
 
     public Integer getWordLength(){
-        return StringUtils.countWords(this.content);
+        return wordLength;
     }
 
     public boolean equals(String phrase){
@@ -146,7 +188,7 @@ public class Phrase{
 
     public static void main(String[] args){
         String t = "This is my question; what   _ yeah";
-        Phrase p = new Phrase(t, false);
+        Phrase p = new Phrase(0, t, false);
         System.out.println(p.getWordLength());
 
         System.out.println(Arrays.toString(t.split("\\W+")));
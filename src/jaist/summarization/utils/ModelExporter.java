@@ -1,5 +1,6 @@
 package jaist.summarization.utils;
 
+import jaist.summarization.ConceptDictionary;
 import jaist.summarization.InputDocument;
 import jaist.summarization.PhraseMatrix;
 import jaist.summarization.unit.Paragraph;
@@ -22,6 +23,9 @@ import java.util.Set;
 
 /**
  * Created by chientran on 3/15/16.
+ *
+ * Concepts and coreference mentions are written with ':' and '|' escaped by a backslash, see
+ * {@link StringUtils#joinEscaped}.
  */
 public class ModelExporter {
     private String documentSetName;
@@ -56,7 +60,7 @@ public class ModelExporter {
 
                 Element conceptsElement = doc.createElement("concepts");
                 phraseElement.appendChild(conceptsElement);
-                conceptsElement.setTextContent(String.join(":", phrase.getConcepts()));
+                conceptsElement.setTextContent(StringUtils.joinEscaped(':', phrase.getConceptNames()));
             }
 
             saveXmlToFile(doc, parentFolder + "/phrases.xml");
@@ -72,7 +76,7 @@ public class ModelExporter {
             out = new PrintWriter(parentFolder + "/corefs.txt");
             for (String key : corefs.keySet()) {
                 Set<String> refs = corefs.get(key);
-                out.println(key + ":" + String.join("|", refs));
+                out.println(StringUtils.escape(key) + ":" + StringUtils.joinEscaped('|', refs));
             }
         } catch (FileNotFoundException ex) {
             System.out.println(ex.getMessage());
@@ -86,7 +90,7 @@ public class ModelExporter {
         try {
             out = new PrintWriter(parentFolder + "/indicator_matrix.txt");
             for (String key : indicatorMatrix.keySet()) {
-                Integer value = Integer.parseInt(indicatorMatrix.getValue(key).toString());
+                int value = indicatorMatrix.getInt(key);
 
                 out.println(key + ":" + value);
             }
@@ -104,6 +108,7 @@ public class ModelExporter {
             xmlDoc.appendChild(rootElement);
 
             for (InputDocument doc : documents) {
+                ConceptDictionary conceptDictionary = doc.getConceptDictionary();
                 Element docElement = xmlDoc.createElement("doc");
                 rootElement.appendChild(docElement);
 
@@ -111,11 +116,11 @@ public class ModelExporter {
                     Element paragraphElement = xmlDoc.createElement("p");
                     docElement.appendChild(paragraphElement);
 
-                    for (String concept: paragraph.getConcepts()){
+                    for (int concept: paragraph.getConcepts()){
                         Element conceptElement = xmlDoc.createElement("concept");
                         paragraphElement.appendChild(conceptElement);
-                        conceptElement.setAttribute("name", concept);
-                        conceptElement.setAttribute("freq", paragraph.countFrequency(concept).toString());
+                        conceptElement.setAttribute("name", conceptDictionary.getConcept(concept));
+                        conceptElement.setAttribute("freq", String.valueOf(paragraph.countFrequency(concept)));
                     }
                 }
             }
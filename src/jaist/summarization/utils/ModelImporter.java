@@ -0,0 +1,151 @@
+package jaist.summarization.utils;
+
+import jaist.summarization.ConceptDictionary;
+import jaist.summarization.InputDocument;
+import jaist.summarization.PhraseMatrix;
+import jaist.summarization.unit.Paragraph;
+import jaist.summarization.unit.Phrase;
+import org.w3c.dom.*;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Reads back the files written by {@link ModelExporter}: phrases.xml, corefs.txt, indicator_matrix.txt and
+ * docs.xml. The text files are read in the platform charset, as PrintWriter wrote them. Concepts are stored
+ * by name in those files, so they are interned again into the dictionary passed in.
+ */
+public class ModelImporter {
+    private String parentFolder;
+
+    public ModelImporter(String statFolder, String documentSetName){
+        this.parentFolder = statFolder + "/" + documentSetName + "/";
+    }
+
+    public List<Phrase> loadPhrasesFromFile(ConceptDictionary conceptDictionary) throws IOException{
+        List<Phrase> phrases = new ArrayList<>();
+        Document doc = parseXml(parentFolder + "/phrases.xml");
+
+        NodeList phraseNodes = doc.getElementsByTagName("phrase");
+        for (int i = 0; i < phraseNodes.getLength(); i++){
+            Element phraseElement = (Element) phraseNodes.item(i);
+
+            int id = Integer.parseInt(phraseElement.getAttribute("id"));
+            int parentId = Integer.parseInt(phraseElement.getAttribute("parentId"));
+            boolean isNP = phraseElement.getAttribute("type").equals("NP");
+            String content = getChildText(phraseElement, "content");
+
+            // the sentence node id is not exported; it only matters while the indicator matrix is being built
+            Phrase phrase = new Phrase(id, content, isNP, parentId, 0);
+            phrase.setSentenceLength(Integer.parseInt(phraseElement.getAttribute("sentenceLength")));
+
+            String concepts = getChildText(phraseElement, "concepts");
+            List<String> conceptNames = concepts.isEmpty() ? new ArrayList<>() : StringUtils.splitEscaped(concepts, ':', 0);
+            phrase.setConcepts(conceptDictionary.internAll(conceptNames));
+            phrase.setConceptDictionary(conceptDictionary);
+
+            phrases.add(phrase);
+        }
+
+        return phrases;
+    }
+
+    /**
+     * Each line is "representative:mention|mention|...", with separators inside the mentions escaped. The
+     * representative is split off at the first unescaped colon.
+     */
+    public HashMap<String, HashSet<String>> loadCoreferencesFromFile() throws IOException{
+        HashMap<String, HashSet<String>> corefs = new HashMap<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(new File(parentFolder + "/corefs.txt").toPath(), Charset.defaultCharset())){
+            String line;
+            while ((line = reader.readLine()) != null){
+                List<String> parts = StringUtils.splitEscaped(line, ':', 2);
+                if (parts.size() < 2) continue;
+
+                HashSet<String> mentions = new HashSet<>(StringUtils.splitEscaped(parts.get(1), '|', 0));
+                corefs.put(parts.get(0), mentions);
+            }
+        }
+
+        return corefs;
+    }
+
+    /**
+     * Each line is "NP_12:VP_40:1"; the cells are added to the given matrix.
+     */
+    public void loadIndicatorMatrixFromFile(PhraseMatrix indicatorMatrix) throws IOException{
+        try (BufferedReader reader = Files.newBufferedReader(new File(parentFolder + "/indicator_matrix.txt").toPath(), Charset.defaultCharset())){
+            String line;
+            while ((line = reader.readLine()) != null){
+                String[] parts = line.split(":");
+                if (parts.length != 3) continue;
+
+                indicatorMatrix.setValue(parts[0].startsWith("NP_"), Integer.parseInt(parts[0].substring(3)),
+                        parts[1].startsWith("NP_"), Integer.parseInt(parts[1].substring(3)),
+                        Double.parseDouble(parts[2]));
+            }
+        }
+    }
+
+    public List<InputDocument> loadParagraphsFromFile(ConceptDictionary conceptDictionary) throws IOException{
+        List<InputDocument> documents = new ArrayList<>();
+        Document xmlDoc = parseXml(parentFolder + "/docs.xml");
+
+        NodeList docNodes = xmlDoc.getElementsByTagName("doc");
+        for (int i = 0; i < docNodes.getLength(); i++){
+            List<Paragraph> paragraphs = new ArrayList<>();
+
+            NodeList paragraphNodes = ((Element) docNodes.item(i)).getElementsByTagName("p");
+            for (int j = 0; j < paragraphNodes.getLength(); j++){
+                NodeList conceptNodes = ((Element) paragraphNodes.item(j)).getElementsByTagName("concept");
+
+                // Paragraph wants ascending concept ids with the frequencies in the same order
+                TreeMap<Integer, Integer> frequencies = new TreeMap<>();
+                for (int k = 0; k < conceptNodes.getLength(); k++){
+                    Element conceptElement = (Element) conceptNodes.item(k);
+                    int concept = conceptDictionary.intern(conceptElement.getAttribute("name"));
+                    frequencies.merge(concept, Integer.parseInt(conceptElement.getAttribute("freq")), Integer::sum);
+                }
+
+                int[] concepts = new int[frequencies.size()];
+                int[] counts = new int[frequencies.size()];
+                int index = 0;
+                for (Map.Entry<Integer, Integer> entry: frequencies.entrySet()){
+                    concepts[index] = entry.getKey();
+                    counts[index] = entry.getValue();
+                    index++;
+                }
+                paragraphs.add(new Paragraph(concepts, counts));
+            }
+
+            documents.add(new InputDocument(paragraphs, conceptDictionary));
+        }
+
+        return documents;
+    }
+
+    private Document parseXml(String filename) throws IOException{
+        try {
+            DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            Document doc = dBuilder.parse(new File(filename));
+            doc.getDocumentElement().normalize();
+            return doc;
+        }catch (IOException e){
+            throw e;
+        }catch (Exception e){
+            throw new IOException("Cannot parse " + filename + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String getChildText(Element element, String tagName){
+        NodeList children = element.getElementsByTagName(tagName);
+        return children.getLength() == 0 ? "" : children.item(0).getTextContent();
+    }
+}
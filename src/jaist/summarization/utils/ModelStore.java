@@ -0,0 +1,288 @@
+package jaist.summarization.utils;
+
+import jaist.summarization.ConceptDictionary;
+import jaist.summarization.InputDocument;
+import jaist.summarization.PhraseMatrix;
+import jaist.summarization.unit.Paragraph;
+import jaist.summarization.unit.Phrase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary snapshot of everything the scoring and optimization stages need: the concept dictionary, phrases,
+ * indicator matrix, coreference clusters and the concept frequencies of every paragraph. A corpus annotated
+ * once can then be summarised again with other parameters without running CoreNLP.
+ *
+ * Layout (big-endian): magic, version, the concepts in id order, a table of the other strings, then the
+ * phrases, the indicator cells, the coref clusters and the documents. Strings are written once as
+ * length-prefixed UTF-8 and referenced by their index; arrays are prefixed with their length. The file is
+ * written through a FileChannel and read back by memory-mapping it.
+ */
+public class ModelStore {
+    private static final int MAGIC = 0x494C5053; // "ILPS"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ConceptDictionary conceptDictionary;
+    private List<Phrase> phrases;
+    private HashMap<String, HashSet<String>> corefs;
+    private List<InputDocument> docs;
+
+    private ModelStore(ConceptDictionary conceptDictionary, List<Phrase> phrases,
+                       HashMap<String, HashSet<String>> corefs, List<InputDocument> docs){
+        this.conceptDictionary = conceptDictionary;
+        this.phrases = phrases;
+        this.corefs = corefs;
+        this.docs = docs;
+    }
+
+    public ConceptDictionary getConceptDictionary(){ return conceptDictionary; }
+    public List<Phrase> getPhrases(){ return phrases; }
+    public HashMap<String, HashSet<String>> getCorefs(){ return corefs; }
+    public List<InputDocument> getDocs(){ return docs; }
+
+    public static void write(File file, ConceptDictionary conceptDictionary, List<Phrase> phrases,
+                             PhraseMatrix indicatorMatrix, HashMap<String, HashSet<String>> corefs,
+                             List<InputDocument> docs) throws IOException{
+        // every non-concept string gets an index in first-use order
+        LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+        for (Phrase phrase: phrases){
+            strings.putIfAbsent(phrase.getContent(), strings.size());
+        }
+        for (Map.Entry<String, HashSet<String>> cluster: corefs.entrySet()){
+            strings.putIfAbsent(cluster.getKey(), strings.size());
+            for (String mention: cluster.getValue()){
+                strings.putIfAbsent(mention, strings.size());
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            ChannelWriter out = new ChannelWriter(channel);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            int conceptCount = conceptDictionary.size();
+            out.writeInt(conceptCount);
+            for (int id = 0; id < conceptCount; id++){
+                out.writeString(conceptDictionary.getConcept(id));
+            }
+
+            out.writeInt(strings.size());
+            for (String string: strings.keySet()){
+                out.writeString(string);
+            }
+
+            out.writeInt(phrases.size());
+            for (Phrase phrase: phrases){
+                out.writeByte(phrase.isNP() ? 1 : 0);
+                out.writeInt(phrase.getId());
+                out.writeInt(phrase.getParentId());
+                out.writeInt(phrase.getSentenceNodeId());
+                out.writeInt(phrase.getSentenceLength());
+                out.writeInt(strings.get(phrase.getContent()));
+                out.writeIntArray(phrase.getConcepts());
+            }
+
+            out.writeInt(indicatorMatrix.size());
+            indicatorMatrix.forEachCell((rowIsNP, rowId, columnIsNP, columnId, value) -> {
+                try {
+                    out.writeByte((rowIsNP ? 1 : 0) | (columnIsNP ? 2 : 0));
+                    out.writeInt(rowId);
+                    out.writeInt(columnId);
+                    out.writeDouble(value);
+                }catch (IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            out.writeInt(corefs.size());
+            for (Map.Entry<String, HashSet<String>> cluster: corefs.entrySet()){
+                out.writeInt(strings.get(cluster.getKey()));
+                out.writeInt(cluster.getValue().size());
+                for (String mention: cluster.getValue()){
+                    out.writeInt(strings.get(mention));
+                }
+            }
+
+            out.writeInt(docs.size());
+            for (InputDocument doc: docs){
+                out.writeInt(doc.getParagraphs().size());
+                for (Paragraph paragraph: doc.getParagraphs()){
+                    out.writeIntArray(paragraph.getConcepts());
+                    out.writeIntArray(paragraph.getFrequencies());
+                }
+            }
+
+            out.flush();
+        }catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads a snapshot, adding its indicator cells to the given matrix.
+     */
+    public static ModelStore read(File file, PhraseMatrix indicatorMatrix) throws IOException{
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (in.getInt() != MAGIC){
+                throw new IOException(file + " is not a model snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION){
+                throw new IOException(file + " has unsupported version " + version);
+            }
+
+            ConceptDictionary conceptDictionary = new ConceptDictionary();
+            int conceptCount = in.getInt();
+            for (int id = 0; id < conceptCount; id++){
+                conceptDictionary.intern(readString(in));
+            }
+
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++){
+                strings[i] = readString(in);
+            }
+
+            int phraseCount = in.getInt();
+            List<Phrase> phrases = new ArrayList<>(phraseCount);
+            for (int i = 0; i < phraseCount; i++){
+                boolean isNP = in.get() == 1;
+                int id = in.getInt();
+                int parentId = in.getInt();
+                int sentenceNodeId = in.getInt();
+                int sentenceLength = in.getInt();
+                String content = strings[in.getInt()];
+
+                Phrase phrase = new Phrase(id, content, isNP, parentId, sentenceNodeId);
+                phrase.setSentenceLength(sentenceLength);
+                phrase.setConcepts(readIntArray(in));
+                phrase.setConceptDictionary(conceptDictionary);
+                phrases.add(phrase);
+            }
+
+            int cellCount = in.getInt();
+            for (int i = 0; i < cellCount; i++){
+                int types = in.get();
+                int rowId = in.getInt();
+                int columnId = in.getInt();
+                indicatorMatrix.setValue((types & 1) != 0, rowId, (types & 2) != 0, columnId, in.getDouble());
+            }
+
+            int clusterCount = in.getInt();
+            HashMap<String, HashSet<String>> corefs = new HashMap<>();
+            for (int i = 0; i < clusterCount; i++){
+                String key = strings[in.getInt()];
+                int mentionCount = in.getInt();
+                HashSet<String> mentions = new HashSet<>();
+                for (int j = 0; j < mentionCount; j++){
+                    mentions.add(strings[in.getInt()]);
+                }
+                corefs.put(key, mentions);
+            }
+
+            int docCount = in.getInt();
+            List<InputDocument> docs = new ArrayList<>(docCount);
+            for (int i = 0; i < docCount; i++){
+                int paragraphCount = in.getInt();
+                List<Paragraph> paragraphs = new ArrayList<>(paragraphCount);
+                for (int j = 0; j < paragraphCount; j++){
+                    int[] concepts = readIntArray(in);
+                    paragraphs.add(new Paragraph(concepts, readIntArray(in)));
+                }
+                docs.add(new InputDocument(paragraphs, conceptDictionary));
+            }
+
+            return new ModelStore(conceptDictionary, phrases, corefs, docs);
+        }catch (BufferUnderflowException | IndexOutOfBoundsException e){
+            throw new IOException(file + " is truncated or corrupt", e);
+        }
+    }
+
+    private static String readString(ByteBuffer in){
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] readIntArray(ByteBuffer in){
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    /**
+     * Buffers primitive writes and drains the buffer into the channel whenever it fills up.
+     */
+    private static class ChannelWriter {
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelWriter(FileChannel channel){
+            this.channel = channel;
+        }
+
+        void writeByte(int value) throws IOException{
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void writeInt(int value) throws IOException{
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeDouble(double value) throws IOException{
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void writeIntArray(int[] values) throws IOException{
+            writeInt(values.length);
+            for (int value: values){
+                writeInt(value);
+            }
+        }
+
+        void writeString(String value) throws IOException{
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            if (bytes.length > buffer.capacity()){
+                flush();
+                ByteBuffer large = ByteBuffer.wrap(bytes);
+                while (large.hasRemaining()){
+                    channel.write(large);
+                }
+                return;
+            }
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void flush() throws IOException{
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException{
+            if (buffer.remaining() < bytes){
+                flush();
+            }
+        }
+    }
+}
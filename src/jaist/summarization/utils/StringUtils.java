@@ -3,13 +3,42 @@ package jaist.summarization.utils;
 import edu.stanford.nlp.util.CollectionUtils;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Created by chientran on 3/3/16.
  */
 public class StringUtils {
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("\\W+");
+
+    /**
+     * Number of tokens text.split("\\W+") would return, counted without building them: an empty leading token
+     * when the text starts with a separator, no trailing empty tokens, and 1 for the empty string.
+     */
     public static int countWords(String text){
-        return splitStringToWords(text).size();
+        int length = text.length();
+        if (length == 0){
+            return 1;
+        }
+
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < length; i++){
+            if (isWordChar(text.charAt(i))){
+                if (!inWord){
+                    words++;
+                    inWord = true;
+                }
+            }else{
+                inWord = false;
+            }
+        }
+
+        if (words > 0 && !isWordChar(text.charAt(0))){
+            words++;
+        }
+
+        return words;
     }
 
     public static List<String> generateUnigrams(String text){
@@ -26,7 +55,71 @@ public class StringUtils {
         return bigrams;
     }
 
+    /**
+     * Joins the parts with the separator, putting a backslash before every backslash, ':' and '|' inside them,
+     * so {@link #splitEscaped} gets the parts back even when they contain the separators of the stats files.
+     */
+    public static String joinEscaped(char separator, Iterable<String> parts){
+        StringBuilder joined = new StringBuilder();
+        boolean first = true;
+        for (String part: parts){
+            if (!first){
+                joined.append(separator);
+            }
+            first = false;
+            joined.append(escape(part));
+        }
+
+        return joined.toString();
+    }
+
+    public static String escape(String text){
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if (c == '\\' || c == ':' || c == '|'){
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+
+        return escaped.toString();
+    }
+
+    /**
+     * Splits at every separator not preceded by a backslash and removes the escapes, the inverse of
+     * {@link #joinEscaped}. With a positive limit at most that many parts are returned, the last one holding
+     * the rest of the text still escaped, so it can be split again at another separator.
+     */
+    public static List<String> splitEscaped(String text, char separator, int limit){
+        List<String> parts = new ArrayList<>();
+        StringBuilder part = new StringBuilder();
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            boolean last = limit > 0 && parts.size() == limit - 1;
+            if (c == '\\' && i + 1 < text.length()){
+                if (last){
+                    part.append(c);
+                }
+                part.append(text.charAt(++i));
+            }else if (c == separator && !last){
+                parts.add(part.toString());
+                part.setLength(0);
+            }else{
+                part.append(c);
+            }
+        }
+        parts.add(part.toString());
+
+        return parts;
+    }
+
     private static List<String> splitStringToWords(String text){
-        return Arrays.asList(text.split("\\W+"));
+        return Arrays.asList(WORD_SEPARATOR.split(text));
+    }
+
+    // the \w class: [a-zA-Z_0-9]
+    private static boolean isWordChar(char c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
     }
 }
@@ -0,0 +1,70 @@
+package jaist.summarization.webservice;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counters of the summarization web service: requests in flight, latency of finished requests and
+ * requests turned away because the executor's queue was full.
+ */
+public class ServiceMetrics {
+    private AtomicInteger inFlight = new AtomicInteger();
+    private AtomicInteger peakInFlight = new AtomicInteger();
+    private AtomicLong completed = new AtomicLong();
+    private AtomicLong failed = new AtomicLong();
+    private AtomicLong rejected = new AtomicLong();
+    private AtomicLong totalLatencyNanos = new AtomicLong();
+    private AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @return the start time to pass to {@link #requestFinished(long, boolean)}
+     */
+    public long requestStarted(){
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        return System.nanoTime();
+    }
+
+    /**
+     * @return the latency of the request in milliseconds
+     */
+    public long requestFinished(long startedAt, boolean succeeded){
+        long latency = System.nanoTime() - startedAt;
+        inFlight.decrementAndGet();
+
+        if (succeeded){
+            completed.incrementAndGet();
+        }else{
+            failed.incrementAndGet();
+        }
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+
+        return latency / 1000000;
+    }
+
+    public void requestRejected(){
+        rejected.incrementAndGet();
+    }
+
+    public int getInFlight(){ return inFlight.get(); }
+    public int getPeakInFlight(){ return peakInFlight.get(); }
+    public long getCompleted(){ return completed.get(); }
+    public long getFailed(){ return failed.get(); }
+    public long getRejected(){ return rejected.get(); }
+    public long getMaxLatencyMillis(){ return maxLatencyNanos.get() / 1000000; }
+
+    public long getAverageLatencyMillis(){
+        long finished = completed.get() + failed.get();
+        return finished == 0 ? 0 : totalLatencyNanos.get() / finished / 1000000;
+    }
+
+    public void printStatistics(){
+        System.out.println("Service: in flight=" + getInFlight()
+                + ", peak in flight=" + getPeakInFlight()
+                + ", completed=" + getCompleted()
+                + ", failed=" + getFailed()
+                + ", rejected=" + getRejected()
+                + ", avg latency=" + getAverageLatencyMillis() + "ms"
+                + ", max latency=" + getMaxLatencyMillis() + "ms");
+    }
+}
@@ -0,0 +1,259 @@
+package jaist.summarization.webservice;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import jaist.summarization.Parser;
+
+import javax.json.*;
+import javax.json.stream.JsonGenerator;
+import java.io.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Plain HTTP front end of the summarizer, for clients that do not want the SOAP envelope. POST a JSON object
+ * such as {"documents": ["...", "..."], "max_words": 100} (or {"text": "..."} for a single document), or a
+ * text/plain body holding one document, or several separated by form feeds. max_words, max_sent,
+ * vp_threshold, time_limit (solver seconds, capped by the server's) and mip_gap may also be given in the query
+ * string; values in the JSON body take precedence. When the solver runs out of time the best summary found so
+ * far is returned, and with fast=true the greedy summary is returned without running the solver.
+ *
+ * The summary is written back one sentence at a time with chunked transfer encoding, as JSON when the request
+ * was JSON and as one sentence per line otherwise. Requests go through the same pipeline pool as the SOAP
+ * endpoint.
+ */
+public class SummarizationHttpHandler implements HttpHandler {
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    private static final String DOCUMENT_SEPARATOR = "\f";
+
+    private ServiceMetrics metrics;
+    private double timeLimit;
+    private double mipGap;
+    private int requestThreads = 1;
+
+    public SummarizationHttpHandler(ServiceMetrics metrics){
+        this(metrics, 0, 0);
+    }
+
+    /**
+     * @param timeLimit solver seconds per request, and the most a request may ask for; 0 for no limit
+     * @param mipGap optimality gap used when a request does not give one; 0 for the solver default
+     */
+    public SummarizationHttpHandler(ServiceMetrics metrics, double timeLimit, double mipGap){
+        this.metrics = metrics;
+        this.timeLimit = timeLimit;
+        this.mipGap = mipGap;
+    }
+
+    /**
+     * @param threads threads one request may use for annotation, scoring and solving
+     */
+    public void setRequestThreads(int threads){
+        this.requestThreads = Math.max(1, threads);
+    }
+
+    public void handle(HttpExchange exchange) throws IOException{
+        long startedAt = metrics.requestStarted();
+        boolean succeeded = false;
+
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())){
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Only POST is supported");
+                return;
+            }
+
+            boolean isJson = isJson(exchange);
+            String body;
+            try {
+                body = readBody(exchange.getRequestBody());
+            }catch (IllegalArgumentException e){
+                sendError(exchange, 413, e.getMessage());
+                return;
+            }
+
+            Map<String, String> parameters;
+            try {
+                parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            }catch (IllegalArgumentException e){
+                sendError(exchange, 400, "Malformed query: " + e.getMessage());
+                return;
+            }
+
+            List<String> documents;
+            try {
+                documents = isJson ? readJsonRequest(body, parameters) : readTextRequest(body);
+            }catch (JsonException | ClassCastException e){
+                sendError(exchange, 400, "Malformed JSON request: " + e.getMessage());
+                return;
+            }
+
+            if (documents.isEmpty()){
+                sendError(exchange, 400, "No documents to summarize");
+                return;
+            }
+
+            Parser parser;
+            try {
+                parser = new Parser(
+                        intParameter(parameters, "max_sent", Parser.DEFAULT_MAXIMUM_SENTENCE),
+                        doubleParameter(parameters, "vp_threshold", Parser.DEFAULT_ALTERNATIVE_VP_THRESHOLD),
+                        intParameter(parameters, "max_words", Parser.DEFAULT_MAX_WORD_LENGTH),
+                        requestThreads,
+                        false);
+                parser.setTimeLimit(SummarizationService.limitTime(doubleParameter(parameters, "time_limit", 0), timeLimit));
+                parser.setMipGap(doubleParameter(parameters, "mip_gap", mipGap));
+                parser.setFastMode(Boolean.parseBoolean(parameters.get("fast")));
+            }catch (NumberFormatException e){
+                sendError(exchange, 400, "Invalid parameter: " + e.getMessage());
+                return;
+            }
+
+            parser.processTexts(documents);
+            String summary = parser.generateSummary();
+
+            writeSummary(exchange, summary, isJson, startedAt);
+            succeeded = true;
+        }catch (IOException | RuntimeException e){
+            e.printStackTrace();
+            sendError(exchange, 500, String.valueOf(e.getMessage()));
+        }finally {
+            exchange.close();
+            long latency = metrics.requestFinished(startedAt, succeeded);
+            System.out.println(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " finished in " + latency + "ms, "
+                    + metrics.getInFlight() + " still in flight");
+        }
+    }
+
+    private void writeSummary(HttpExchange exchange, String summary, boolean isJson, long startedAt) throws IOException{
+        String[] sentences = summary.isEmpty() ? new String[0] : summary.split("\n");
+
+        exchange.getResponseHeaders().set("Content-Type",
+                (isJson ? "application/json" : "text/plain") + "; charset=UTF-8");
+        // length 0 selects chunked encoding, so each flushed sentence reaches the client right away
+        exchange.sendResponseHeaders(200, 0);
+
+        OutputStream out = exchange.getResponseBody();
+        if (isJson){
+            JsonGenerator generator = Json.createGenerator(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            generator.writeStartObject().writeStartArray("summary");
+            for (String sentence: sentences){
+                generator.write(sentence);
+                generator.flush();
+            }
+            generator.writeEnd()
+                    .write("sentences", sentences.length)
+                    .write("latency_ms", (System.nanoTime() - startedAt) / 1000000)
+                    .writeEnd();
+            generator.close();
+        }else{
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (String sentence: sentences){
+                writer.write(sentence);
+                writer.write("\n");
+                writer.flush();
+            }
+            writer.close();
+        }
+    }
+
+    private List<String> readJsonRequest(String body, Map<String, String> parameters){
+        List<String> documents = new ArrayList<>();
+        JsonObject request;
+        try (JsonReader reader = Json.createReader(new StringReader(body))){
+            request = reader.readObject();
+        }
+
+        if (request.containsKey("documents")){
+            for (JsonString document: request.getJsonArray("documents").getValuesAs(JsonString.class)){
+                addDocument(documents, document.getString());
+            }
+        }
+        if (request.containsKey("text")){
+            addDocument(documents, request.getString("text"));
+        }
+
+        for (String name: new String[]{"max_words", "max_sent", "vp_threshold", "time_limit", "mip_gap", "fast"}){
+            JsonValue value = request.get(name);
+            if (value != null && value.getValueType() != JsonValue.ValueType.NULL){
+                parameters.put(name, value instanceof JsonString ? ((JsonString) value).getString() : value.toString());
+            }
+        }
+
+        return documents;
+    }
+
+    private List<String> readTextRequest(String body){
+        List<String> documents = new ArrayList<>();
+        for (String document: body.split(DOCUMENT_SEPARATOR)){
+            addDocument(documents, document);
+        }
+
+        return documents;
+    }
+
+    private void addDocument(List<String> documents, String text){
+        if (!text.trim().isEmpty()){
+            documents.add(text);
+        }
+    }
+
+    private boolean isJson(HttpExchange exchange){
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return contentType != null && contentType.toLowerCase().contains("json");
+    }
+
+    private String readBody(InputStream in) throws IOException{
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1){
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES){
+                throw new IllegalArgumentException("Request body larger than " + MAX_BODY_BYTES + " bytes");
+            }
+        }
+
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Map<String, String> parseQuery(String query) throws UnsupportedEncodingException{
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()){
+            return parameters;
+        }
+
+        for (String pair: query.split("&")){
+            int equals = pair.indexOf('=');
+            if (equals > 0){
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+
+        return parameters;
+    }
+
+    private int intParameter(Map<String, String> parameters, String name, int defaultValue){
+        String value = parameters.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private double doubleParameter(Map<String, String> parameters, String name, double defaultValue){
+        String value = parameters.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException{
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        try {
+            exchange.sendResponseHeaders(status, bytes.length);
+        }catch (IOException e){
+            // headers already sent, e.g. a failure while streaming the summary
+            return;
+        }
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -10,11 +10,76 @@ import javax.jws.WebService;
  */
 @WebService
 public class SummarizationService {
+    private ServiceMetrics metrics;
+    private double timeLimit;
+    private double mipGap;
+    private int requestThreads = 1;
+
+    public SummarizationService(){
+        this(new ServiceMetrics(), 0, 0);
+    }
+
+    /**
+     * @param timeLimit solver seconds per request, and the most a request may ask for; 0 for no limit
+     * @param mipGap optimality gap used when a request does not give one; 0 for the solver default
+     */
+    public SummarizationService(ServiceMetrics metrics, double timeLimit, double mipGap){
+        this.metrics = metrics;
+        this.timeLimit = timeLimit;
+        this.mipGap = mipGap;
+    }
+
+    /**
+     * @param threads threads one request may use for annotation, scoring and solving. Requests run side by side,
+     *                so this bounds the CPU and solver memory of the whole service together with the executor
+     */
+    @WebMethod(exclude=true)
+    public void setRequestThreads(int threads){
+        this.requestThreads = Math.max(1, threads);
+    }
+
     @WebMethod(action="summarizeText")
     public String summarizeText(String long_text, int max_words){
-        Parser parser = new Parser(max_words);
-        parser.processDocument(long_text);
+        return summarizeTextWithin(long_text, max_words, 0, 0);
+    }
+
+    /**
+     * Like summarizeText, but the solver stops after time_limit seconds or once within mip_gap of the optimum
+     * and returns the best summary found so far. 0 keeps the service defaults.
+     */
+    @WebMethod(action="summarizeTextWithin")
+    public String summarizeTextWithin(String long_text, int max_words, double time_limit, double mip_gap){
+        long startedAt = metrics.requestStarted();
+        boolean succeeded = false;
+
+        try {
+            // every request gets its own Parser, ids and matrices; only the pipeline pool is shared
+            Parser parser = new Parser(Parser.DEFAULT_MAXIMUM_SENTENCE, Parser.DEFAULT_ALTERNATIVE_VP_THRESHOLD,
+                    max_words, requestThreads, false);
+            parser.setTimeLimit(limitTime(time_limit, timeLimit));
+            parser.setMipGap(mip_gap > 0 ? mip_gap : mipGap);
+            parser.processDocument(long_text);
+
+            String summary = parser.generateSummary();
+            succeeded = true;
+            return summary;
+        } finally {
+            long latency = metrics.requestFinished(startedAt, succeeded);
+            System.out.println("summarizeText finished in " + latency + "ms, " + metrics.getInFlight() + " still in flight");
+        }
+    }
+
+    /**
+     * The requested budget, capped by the service's own; either may be 0 for no limit.
+     */
+    static double limitTime(double requested, double serviceLimit){
+        if (requested <= 0) return serviceLimit;
+        if (serviceLimit <= 0) return requested;
+        return Math.min(requested, serviceLimit);
+    }
 
-        return parser.generateSummary();
+    @WebMethod(exclude=true)
+    public ServiceMetrics getMetrics(){
+        return metrics;
     }
 }
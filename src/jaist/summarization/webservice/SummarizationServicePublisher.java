@@ -1,19 +1,144 @@
 package jaist.summarization.webservice;
 
+import com.sun.net.httpserver.HttpServer;
 import jaist.summarization.AnnotatorHub;
+import org.apache.commons.cli.*;
 
 import javax.xml.ws.Endpoint;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by chientran on 3/6/16.
+ *
+ * Publishes the service on a bounded executor: at most "threads" requests run at once and at most "queue"
+ * more wait. Anything beyond that is rejected and its connection closed instead of piling up in memory.
+ * Each running request gets "request_threads" threads for annotation, scoring and the solver, so the service
+ * uses about threads x request_threads cores in total.
+ * With -http_port the JSON/plain-text endpoint is served as well, on the same executor and pipeline pool. It
+ * listens on the host of -address unless -http_host names another one, so by default it is only reachable locally.
  */
 public class SummarizationServicePublisher {
     static String ADDRESS = "http://localhost:9999/ws/as";
+    static int DEFAULT_QUEUE_CAPACITY = 16;
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws ParseException, IOException{
+        Options options = new Options();
+        options.addOption("help", false, "print command usage");
+        options.addOption("address", true, "Address to publish the service at (default " + ADDRESS + ")");
+        options.addOption("threads", true, "Maximum number of requests handled concurrently (default: # of cores)");
+        options.addOption("queue", true, "Maximum number of requests waiting for a thread before new ones are rejected (default " + DEFAULT_QUEUE_CAPACITY + ")");
+        options.addOption("request_threads", true, "Threads each request may use for annotation, scoring and solving (default: # of cores / -threads)");
+        options.addOption("pipelines", true, "Number of CoreNLP pipelines to keep warm, each needs its own heap (default: one per concurrent request, up to 4)");
+        options.addOption("time_limit", true, "Solver seconds per request, and the most a request may ask for (default: no limit)");
+        options.addOption("mip_gap", true, "Relative optimality gap used when a request does not give one (default: solver default)");
+        options.addOption("http_port", true, "Also serve POST /summarize (JSON or plain text) on this port");
+        options.addOption("http_host", true, "Host or interface the HTTP endpoint listens on, 0.0.0.0 for all (default: the host of -address)");
+
+        CommandLine cmd = new DefaultParser().parse(options, args);
+        if (cmd.hasOption("help")){
+            new HelpFormatter().printHelp("usage", options);
+            return;
+        }
+
+        String address = cmd.getOptionValue("address", ADDRESS);
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (cmd.hasOption("threads")){
+            threads = Integer.parseInt(cmd.getOptionValue("threads"));
+        }
+        int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        if (cmd.hasOption("queue")){
+            queueCapacity = Integer.parseInt(cmd.getOptionValue("queue"));
+        }
+        int requestThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, threads));
+        if (cmd.hasOption("request_threads")){
+            requestThreads = Integer.parseInt(cmd.getOptionValue("request_threads"));
+        }
+        double timeLimit = Double.parseDouble(cmd.getOptionValue("time_limit", "0"));
+        double mipGap = Double.parseDouble(cmd.getOptionValue("mip_gap", "0"));
+        if (cmd.hasOption("pipelines")){
+            AnnotatorHub.setPoolSize(Integer.parseInt(cmd.getOptionValue("pipelines")));
+        }
+        AnnotatorHub.setAnnotationThreads(threads);
 
         AnnotatorHub.getInstance();
-        Endpoint.publish(ADDRESS, new SummarizationService());
-        System.out.println("Web service is ready at: " + ADDRESS);
+
+        ServiceMetrics metrics = new ServiceMetrics();
+        ThreadPoolExecutor executor = createExecutor(threads, queueCapacity, metrics);
+
+        SummarizationService service = new SummarizationService(metrics, timeLimit, mipGap);
+        service.setRequestThreads(requestThreads);
+        Endpoint endpoint = Endpoint.create(service);
+        endpoint.setExecutor(executor);
+        endpoint.publish(address);
+
+        System.out.println("Web service is ready at: " + address + " (" + threads + " threads, queue of " + queueCapacity
+                + ", " + requestThreads + " threads per request)");
+
+        if (cmd.hasOption("http_port")){
+            int port = Integer.parseInt(cmd.getOptionValue("http_port"));
+            String host = cmd.getOptionValue("http_host", hostOf(address));
+            HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            SummarizationHttpHandler handler = new SummarizationHttpHandler(metrics, timeLimit, mipGap);
+            handler.setRequestThreads(requestThreads);
+            server.createContext("/summarize", handler);
+            server.setExecutor(executor);
+            server.start();
+
+            System.out.println("HTTP endpoint is ready at: http://" + host + ":" + port + "/summarize");
+        }
+    }
+
+    /**
+     * The host part of the SOAP address, or localhost when it has none.
+     */
+    static String hostOf(String address){
+        try {
+            String host = new URI(address).getHost();
+            return host != null ? host : "localhost";
+        }catch (Exception e){
+            return "localhost";
+        }
+    }
+
+    /**
+     * A fixed number of workers in front of a bounded queue. Rejections are counted and rethrown, which makes
+     * the HTTP server close the connection straight away.
+     */
+    public static ThreadPoolExecutor createExecutor(int threads, int queueCapacity, ServiceMetrics metrics){
+        RejectedExecutionHandler abort = new ThreadPoolExecutor.AbortPolicy();
+
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                createThreadFactory(),
+                (task, executor) -> {
+                    metrics.requestRejected();
+                    System.out.println("Rejected request: " + threads + " running, " + executor.getQueue().size() + " queued");
+                    abort.rejectedExecution(task, executor);
+                });
+    }
+
+    /**
+     * Virtual threads when the JVM has them (Java 21+), looked up reflectively so the code still builds for
+     * older targets; platform daemon threads otherwise.
+     */
+    private static ThreadFactory createThreadFactory(){
+        try {
+            // go through the public Thread.Builder interface, the builder's own class is not accessible
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "summarization-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        }catch (ReflectiveOperationException | RuntimeException e){
+            AtomicInteger count = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "summarization-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
     }
 }